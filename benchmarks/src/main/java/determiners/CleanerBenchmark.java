@@ -0,0 +1,98 @@
+package determiners;
+
+import determiners.readers.StaxCorpusCleaner;
+import determiners.readers.XMLCorpusCleaner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cleaning a synthetic CHILDES XML transcript with {@link XMLCorpusCleaner} (DOM) and {@link StaxCorpusCleaner}.
+ * The transcript is generated once per trial and contains every construct handled by the cleaners.
+ *
+ * @author Christos Christodoulopoulos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CleanerBenchmark {
+    private static final String[] words = {"the", "a", "doggie", "ball", "want", "more", "cookie_z", "big_truck"};
+
+    @Param({"10000"})
+    public int numUtterances;
+
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("childes-", ".xml");
+        writeTranscript(file, numUtterances, new Random(42));
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public int domNextUtterance() {
+        XMLCorpusCleaner cleaner = new XMLCorpusCleaner(file.getPath());
+        int utterances = 0;
+        while (cleaner.nextUtterance() != null) utterances++;
+        return utterances;
+    }
+
+    @Benchmark
+    public int staxNextUtterance() throws IOException, XMLStreamException {
+        int utterances = 0;
+        try (StaxCorpusCleaner cleaner = new StaxCorpusCleaner(file.getPath(), "CHI")) {
+            while (cleaner.nextUtterance() != null) utterances++;
+        }
+        return utterances;
+    }
+
+    /** Writes a random transcript with a mix of speakers, clean and skipped words, groups and pauses */
+    static void writeTranscript(File file, int numUtterances, Random random) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<CHAT xmlns=\"http://www.talkbank.org/ns/talkbank\" Lang=\"eng\">");
+            for (int u = 0; u < numUtterances; u++) {
+                String who = random.nextInt(3) == 0 ? "MOT" : "CHI";
+                out.println("<u who=\"" + who + "\" uID=\"u" + u + "\">");
+                int length = 1 + random.nextInt(8);
+                for (int i = 0; i < length; i++) {
+                    String word = words[random.nextInt(words.length)];
+                    int kind = random.nextInt(40);
+                    if (kind == 0) out.println("<pause symbolic-length=\"simple\"/>");
+                    else if (kind == 1) out.println("<g><w>" + word + "</w><k type=\"retracing\"/></g>");
+                    else if (kind == 2) out.println("<w untranscribed=\"unintelligible\">xxx</w>");
+                    else if (kind == 3) out.println("<w>" + word + "<replacement><w>" + word + "</w></replacement></w>");
+                    else if (kind == 4) out.println("<w>" + word + "<shortening>g</shortening></w>");
+                    else out.println("<w>" + word + "</w>");
+                }
+                out.println("<t type=\"" + (random.nextBoolean() ? "p" : "q") + "\"/>");
+                out.println("</u>");
+            }
+            out.println("</CHAT>");
+        }
+    }
+}
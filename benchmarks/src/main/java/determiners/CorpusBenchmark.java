@@ -0,0 +1,53 @@
+package determiners;
+
+import determiners.readers.TaggedCorpusReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The corpus scan of {@link YangReplicator}: reading a tagged file, removing the repeated sentences and counting
+ * the determiner-noun pairs. Run from the {@code benchmarks} folder, or set {@code dataFolder}.
+ *
+ * @author Christos Christodoulopoulos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CorpusBenchmark {
+    @Param({"../data/tagged"})
+    public String dataFolder;
+
+    @Param({"adam", "eve", "naomi", "nina", "peter", "sarah"})
+    public String child;
+
+    private String file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = dataFolder + File.separator + child + ".txt";
+        if (!new File(file).isFile()) throw new IOException("Missing data file " + file);
+    }
+
+    @Benchmark
+    public DetNounTable scanCorpus() throws IOException {
+        DetNounTable table = new DetNounTable(TaggedCorpusReader.DETERMINERS);
+        new TaggedCorpusReader(file, table.nouns()).read(table);
+        return table;
+    }
+}
@@ -0,0 +1,58 @@
+package determiners;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The predicted diversity of a Zipfian sample, as computed by {@link YangReplicator} (through
+ * {@link DiversityModel}), for different numbers of noun types.
+ *
+ * @author Christos Christodoulopoulos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DiversityModelBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    public int numTypes;
+
+    /** The sample size as a multiple of the number of types */
+    @Param({"4"})
+    public double samplesPerType;
+
+    private double sampleSize;
+    private final double[] detProbs = {1.0 / 3.0, 2.0 / 3.0};
+    private final double[] expected = new double[DiversityModel.batchSize];
+    private final double[] work = new double[DiversityModel.batchSize];
+
+    @Setup
+    public void setup() {
+        sampleSize = numTypes * samplesPerType;
+        // Do not measure filling the harmonic cache
+        DiversityModel.harmonic(numTypes);
+    }
+
+    @Benchmark
+    public double predictedDiversity() {
+        return DiversityModel.predictedDiversity(numTypes, sampleSize, detProbs, false, expected, work);
+    }
+
+    @Benchmark
+    public double predictedDiversitySimpleModel() {
+        return DiversityModel.predictedDiversity(numTypes, sampleSize, detProbs, true, expected, work);
+    }
+}
@@ -0,0 +1,52 @@
+package determiners;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single round of {@link Simulation#sample} (as run by {@link SimulationEngine}) for different numbers of types,
+ * noun frequencies and sampling modes.
+ *
+ * @author Christos Christodoulopoulos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SimulationBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int totalTypes;
+
+    @Param({"1", "10"})
+    public double multiplier;
+
+    @Param({"PER_TOKEN", "CLOSED_FORM"})
+    public SamplingMode samplingMode;
+
+    private int maxNounFreq;
+    private SplittableRng random;
+
+    @Setup
+    public void setup() {
+        maxNounFreq = (int) Math.round(totalTypes * multiplier);
+        random = new SplittableRng(42);
+    }
+
+    @Benchmark
+    public double sample() {
+        return Simulation.sample(totalTypes, maxNounFreq, 2.0 / 3.0, samplingMode, random);
+    }
+}
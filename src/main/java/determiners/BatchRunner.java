@@ -0,0 +1,178 @@
+package determiners;
+
+import edu.illinois.cs.cogcomp.core.io.LineIO;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link YangReplicator} on every {@code <child>.txt} file of a folder, using a bounded pool of worker
+ * threads. The results are returned sorted by child name, regardless of the order in which the files finish.
+ *
+ * The parallel parts of every child (random reassignments, bootstrap replicates, ...) run on a second pool of the
+ * same size, shared by all the children, so the number of busy threads does not grow with the number of files
+ * processed at the same time. Its tasks never wait for other tasks, so the children waiting for them cannot
+ * deadlock it.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class BatchRunner {
+    private final File dataFolder;
+    private final int numThreads;
+
+    /**
+     * @param dataFolder The folder containing the preprocessed (cleaned and tagged) {@code <child>.txt} files
+     * @param numThreads The maximum number of files processed at the same time
+     */
+    public BatchRunner(String dataFolder, int numThreads) {
+        this.dataFolder = new File(dataFolder);
+        this.numThreads = numThreads;
+    }
+
+    /** @return The names of the children with a data file in the folder, sorted */
+    public List<String> children() throws FileNotFoundException {
+        String[] files = dataFolder.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".txt") && new File(dir, name).isFile();
+            }
+        });
+        if (files == null) throw new FileNotFoundException(dataFolder.getPath());
+        Arrays.sort(files);
+        List<String> children = new ArrayList<>();
+        for (String file : files)
+            children.add(file.substring(0, file.length() - ".txt".length()));
+        return children;
+    }
+
+    /** Processes all the files of the folder concurrently */
+    public List<ChildResult> run() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        final ExecutorService tasks = Executors.newFixedThreadPool(numThreads);
+        List<Future<ChildResult>> futures = new ArrayList<>();
+        try {
+            for (final String child : children()) {
+                final String file = dataFolder.getPath() + File.separator + child + ".txt";
+                futures.add(executor.submit(new Callable<ChildResult>() {
+                    @Override
+                    public ChildResult call() throws IOException {
+                        return new YangReplicator(child, file, tasks).getResult();
+                    }
+                }));
+            }
+            List<ChildResult> results = new ArrayList<>();
+            for (Future<ChildResult> future : futures)
+                results.add(future.get());
+            return results;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+            tasks.shutdownNow();
+        }
+    }
+
+    /** Writes the results as tab-separated rows (with a header) */
+    public static void write(List<ChildResult> results, String outFile) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(ChildResult.HEADER);
+        for (ChildResult result : results)
+            lines.add(result.toRow());
+        LineIO.write(outFile, lines);
+    }
+
+    /**
+     * Writes the results of every pair of determiners as tab-separated rows (with a header).
+     *
+     * @return Whether there were any pairwise results to write
+     */
+    public static boolean writePairs(List<ChildResult> results, String outFile) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(DeterminerPairResult.HEADER);
+        for (ChildResult result : results)
+            for (DeterminerPairResult pair : result.pairs)
+                lines.add(pair.toRow());
+        if (lines.size() == 1) return false;
+        LineIO.write(outFile, lines);
+        return true;
+    }
+
+    /**
+     * Writes the bootstrap intervals as tab-separated rows (with a header).
+     *
+     * @return Whether there were any bootstrap results to write
+     */
+    public static boolean writeBootstrap(List<ChildResult> results, String outFile) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(ChildResult.BOOTSTRAP_HEADER);
+        for (ChildResult result : results)
+            if (result.bootstrap != null) lines.add(result.toBootstrapRow());
+        if (lines.size() == 1) return false;
+        LineIO.write(outFile, lines);
+        return true;
+    }
+
+    /**
+     * Writes the windows of the developmental trajectories as tab-separated rows (with a header).
+     *
+     * @return Whether there were any windows to write
+     */
+    public static boolean writeWindows(List<ChildResult> results, String outFile) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(WindowResult.HEADER);
+        for (ChildResult result : results)
+            for (WindowResult window : result.windows)
+                lines.add(window.toRow());
+        if (lines.size() == 1) return false;
+        LineIO.write(outFile, lines);
+        return true;
+    }
+
+    /**
+     * Writes the fitted Zipf exponents and determiner probabilities as tab-separated rows (with a header).
+     *
+     * @return Whether there were any fits to write
+     */
+    public static boolean writeFits(List<ChildResult> results, String outFile) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(ChildResult.FIT_HEADER);
+        for (ChildResult result : results)
+            if (result.fit != null) lines.add(result.toFitRow());
+        if (lines.size() == 1) return false;
+        LineIO.write(outFile, lines);
+        return true;
+    }
+
+    /**
+     * Writes the diversity of every subsample size of every child as tab-separated rows (with a header).
+     *
+     * @return Whether there were any curves to write
+     */
+    public static boolean writeCurves(List<ChildResult> results, String outFile) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(CurvePoint.HEADER);
+        for (ChildResult result : results)
+            for (CurvePoint point : result.curve)
+                lines.add(point.toRow());
+        if (lines.size() == 1) return false;
+        LineIO.write(outFile, lines);
+        return true;
+    }
+}
@@ -0,0 +1,69 @@
+package determiners;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the raw per-rank results in a compact binary format: one fixed-size record (int frequency, double
+ * expected diversity, byte empirical diversity) per rank, followed by a trailer with the summary of the round.
+ * Use {@link #toTsv(String, String)} (or run this class with the two file names) to convert to the tab-separated
+ * format of {@link TsvRankSink}.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class BinaryRankSink implements RankSink {
+    private static final int MAGIC = 0x52414e4b;
+    /** Marks the trailer (no frequency is negative) */
+    private static final int END = -1;
+
+    private final DataOutputStream out;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryRankSink <binary input> <tsv output>");
+            System.exit(-1);
+        }
+        toTsv(args[0], args[1]);
+    }
+
+    public BinaryRankSink(String file) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+    }
+
+    @Override
+    public void rank(int nounFreq, double expectedDiversity, int empiricalDiversity) throws IOException {
+        out.writeInt(nounFreq);
+        out.writeDouble(expectedDiversity);
+        out.writeByte(empiricalDiversity);
+    }
+
+    @Override
+    public void summary(double predicted, double empirical) throws IOException {
+        out.writeInt(END);
+        out.writeDouble(predicted);
+        out.writeDouble(empirical);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /** Converts a binary file to the tab-separated format, streaming one record at a time */
+    public static void toTsv(String binaryFile, String tsvFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(binaryFile),
+                1 << 16)); TsvRankSink tsv = new TsvRankSink(tsvFile)) {
+            if (in.readInt() != MAGIC) throw new IOException(binaryFile + " is not a binary rank file");
+            int nounFreq;
+            while ((nounFreq = in.readInt()) != END)
+                tsv.rank(nounFreq, in.readDouble(), in.readByte());
+            tsv.summary(in.readDouble(), in.readDouble());
+        }
+    }
+}
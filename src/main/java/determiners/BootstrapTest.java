@@ -0,0 +1,202 @@
+package determiners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Bootstrap confidence intervals for the empirical and the predicted diversity of a corpus: the determiner-noun
+ * pairs are resampled with replacement and both diversities are recomputed on every replicate (the predicted one
+ * using the number of noun types in the replicate). The intervals are the percentiles of the replicates.
+ * Resampling with replacement repeats pairs, so a replicate has fewer distinct noun types than the corpus and both
+ * diversities are shifted compared to the observed ones; the means of the replicates are reported to show this.
+ *
+ * Replicates are split into tasks of a fixed size that run in parallel on a pool owned by the caller, like
+ * {@link PermutationTest}. Each task draws pair indices straight into the primitive columns of the
+ * {@link DetNounTable}, reuses its buffers between replicates and draws from its own {@link SplittableRng} stream,
+ * so the result for a given seed does not depend on the number of threads.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class BootstrapTest {
+    /** The number of replicates run by a single task */
+    private static final int replicatesPerTask = 256;
+
+    private static final Metrics.Stage bootstrapStage = Metrics.stage("bootstrap");
+    private static final Metrics.Stage predictStage = Metrics.stage("predict");
+    private static final Metrics.Counter replicatesCounter = Metrics.counter("bootstrap.replicates");
+    private static final Metrics.Counter drawsCounter = Metrics.counter("bootstrap.rng-draws");
+
+    /** The percentile intervals of the empirical and predicted diversity (as percentages of the noun types) */
+    public static class Result {
+        public final int replicates;
+        public final double confidence;
+        public final double empiricalMean, empiricalLow, empiricalHigh;
+        public final double predictedMean, predictedLow, predictedHigh;
+        /** The interval of the difference between the empirical and the predicted diversity */
+        public final double differenceLow, differenceHigh;
+
+        Result(int replicates, double confidence, double empiricalMean, double empiricalLow, double empiricalHigh,
+               double predictedMean, double predictedLow, double predictedHigh, double differenceLow,
+               double differenceHigh) {
+            this.replicates = replicates;
+            this.confidence = confidence;
+            this.empiricalMean = empiricalMean;
+            this.empiricalLow = empiricalLow;
+            this.empiricalHigh = empiricalHigh;
+            this.predictedMean = predictedMean;
+            this.predictedLow = predictedLow;
+            this.predictedHigh = predictedHigh;
+            this.differenceLow = differenceLow;
+            this.differenceHigh = differenceHigh;
+        }
+    }
+
+    private final DetNounTable table;
+    private final double[] detProbs;
+    private final double exponent;
+    private final ExecutorService executor;
+    private final SplittableRng master;
+
+    /**
+     * @param table The determiner-noun pairs of the corpus
+     * @param detProbs The probability of each determiner used for the predicted diversity, or {@code null} to use
+     *                 the relative frequencies of the determiners in each replicate
+     * @param exponent The Zipf exponent of the nouns used for the predicted diversity (1 in Yang (2013))
+     * @param executor The pool that runs the replicate tasks; it is not shut down by the test
+     * @param seed The master seed of the resampling
+     */
+    public BootstrapTest(DetNounTable table, double[] detProbs, double exponent, ExecutorService executor,
+                         long seed) {
+        this.table = table;
+        this.detProbs = detProbs;
+        this.exponent = exponent;
+        this.executor = executor;
+        this.master = new SplittableRng(seed);
+    }
+
+    /**
+     * @param numReplicates The number of bootstrap replicates
+     * @param confidence The confidence level of the intervals (e.g. 0.95)
+     */
+    public Result run(int numReplicates, double confidence) {
+        double[] empirical = new double[numReplicates], predicted = new double[numReplicates];
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            int task = 0;
+            for (int from = 0; from < numReplicates; from += replicatesPerTask) {
+                int count = Math.min(replicatesPerTask, numReplicates - from);
+                futures.add(executor.submit(new ReplicateTask(master.split(task++), from, count, empirical,
+                        predicted)));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            for (Future<?> future : futures)
+                future.cancel(true);
+        }
+
+        double[] difference = new double[numReplicates];
+        RunningStats empiricalStats = new RunningStats(), predictedStats = new RunningStats();
+        for (int i = 0; i < numReplicates; i++) {
+            difference[i] = empirical[i] - predicted[i];
+            empiricalStats.add(empirical[i]);
+            predictedStats.add(predicted[i]);
+        }
+        Arrays.sort(empirical);
+        Arrays.sort(predicted);
+        Arrays.sort(difference);
+        double low = (1 - confidence) / 2, high = 1 - low;
+        return new Result(numReplicates, confidence,
+                empiricalStats.mean(), percentile(empirical, low), percentile(empirical, high),
+                predictedStats.mean(), percentile(predicted, low), percentile(predicted, high),
+                percentile(difference, low), percentile(difference, high));
+    }
+
+    /** @return The {@code q}-th quantile of sorted values, interpolating linearly between the closest ranks */
+    static double percentile(double[] sorted, double q) {
+        if (sorted.length == 0) return Double.NaN;
+        double position = q * (sorted.length - 1);
+        int lower = (int) Math.floor(position);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    private class ReplicateTask implements Callable<Void> {
+        private final SplittableRng random;
+        private final int from, count;
+        private final double[] empirical, predicted;
+
+        ReplicateTask(SplittableRng random, int from, int count, double[] empirical, double[] predicted) {
+            this.random = random;
+            this.from = from;
+            this.count = count;
+            this.empirical = empirical;
+            this.predicted = predicted;
+        }
+
+        @Override
+        public Void call() {
+            Metrics.Span span = bootstrapStage.span();
+            try {
+                resample();
+            }
+            finally {
+                span.stop();
+            }
+            return null;
+        }
+
+        private void resample() {
+            int size = table.size();
+            int[] dets = table.tokenDets(), nouns = table.tokenNouns();
+            int numDets = table.determiners().length;
+            int[] detMasks = new int[table.numNounTypes()];
+            int[] detCounts = new int[numDets];
+            double[] replicateProbs = new double[numDets];
+            double[] expected = new double[DiversityModel.batchSize], work = new double[DiversityModel.batchSize];
+            for (int r = from; r < from + count; r++) {
+                Arrays.fill(detMasks, 0);
+                Arrays.fill(detCounts, 0);
+                int types = 0, diverse = 0;
+                for (int i = 0; i < size; i++) {
+                    int pair = random.nextInt(size);
+                    int det = dets[pair], noun = nouns[pair];
+                    detCounts[det]++;
+                    int mask = detMasks[noun];
+                    int newMask = mask | (1 << det);
+                    if (newMask != mask) {
+                        if (mask == 0) types++;
+                        else if (Integer.bitCount(mask) == 1) diverse++;
+                        detMasks[noun] = newMask;
+                    }
+                }
+                double[] probs = detProbs;
+                if (probs == null) {
+                    for (int d = 0; d < numDets; d++)
+                        replicateProbs[d] = (double) detCounts[d] / size;
+                    probs = replicateProbs;
+                }
+                empirical[r] = ((double) diverse / types) * 100;
+                long start = predictStage.start();
+                predicted[r] = DiversityModel.predictedDiversity(types, size, exponent, probs, false, expected,
+                        work);
+                predictStage.stop(start);
+            }
+            replicatesCounter.add(count);
+            drawsCounter.add((long) count * size);
+        }
+    }
+}
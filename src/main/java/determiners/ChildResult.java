@@ -0,0 +1,97 @@
+package determiners;
+
+import edu.illinois.cs.cogcomp.core.utilities.StringUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of {@link YangReplicator} for a single child.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class ChildResult {
+    public static final String HEADER = "child\t#samples\t#noun-types\tempirical\tpredicted\tsimulated" +
+            "\tsimulated-stderr\tp-value";
+    public static final String FIT_HEADER = "child\texponent\tlog-likelihood\titerations\tdeterminer-probs";
+    public static final String BOOTSTRAP_HEADER = "child\treplicates\tconfidence\tempirical-mean\tempirical-low" +
+            "\tempirical-high\tpredicted-mean\tpredicted-low\tpredicted-high\tdifference-low\tdifference-high";
+
+    public final String child;
+    public final int samples;
+    public final int nounTypes;
+    public final double empirical;
+    public final double predicted;
+    /** The mean diversity of the randomly reassigned samples */
+    public final double simulated;
+    public final double simulatedStdErr;
+    /** The p-value of the empirical diversity under the random reassignments */
+    public final double pValue;
+    /** The results of every pair of determiners (empty when there are only two) */
+    public final List<DeterminerPairResult> pairs;
+    /** The bootstrap confidence intervals, or {@code null} if they were not computed */
+    public final BootstrapTest.Result bootstrap;
+    /** The diversity of every window of the developmental trajectory (empty if it was not computed) */
+    public final List<WindowResult> windows;
+    /** The fitted Zipf exponent and determiner probabilities, or {@code null} if they were not fitted */
+    public final ZipfFit.Result fit;
+    /** The diversity at every subsample size (empty if it was not computed) */
+    public final List<CurvePoint> curve;
+
+    public ChildResult(String child, int samples, int nounTypes, double empirical, double predicted,
+                       double simulated, double simulatedStdErr, double pValue) {
+        this(child, samples, nounTypes, empirical, predicted, simulated, simulatedStdErr, pValue,
+                Collections.<DeterminerPairResult>emptyList(), null, Collections.<WindowResult>emptyList(),
+                null, Collections.<CurvePoint>emptyList());
+    }
+
+    public ChildResult(String child, int samples, int nounTypes, double empirical, double predicted,
+                       double simulated, double simulatedStdErr, double pValue, List<DeterminerPairResult> pairs,
+                       BootstrapTest.Result bootstrap, List<WindowResult> windows, ZipfFit.Result fit,
+                       List<CurvePoint> curve) {
+        this.child = child;
+        this.samples = samples;
+        this.nounTypes = nounTypes;
+        this.empirical = empirical;
+        this.predicted = predicted;
+        this.simulated = simulated;
+        this.simulatedStdErr = simulatedStdErr;
+        this.pValue = pValue;
+        this.pairs = pairs;
+        this.bootstrap = bootstrap;
+        this.windows = windows;
+        this.fit = fit;
+        this.curve = curve;
+    }
+
+    /** @return The result as a tab-separated row (see {@link #HEADER}) */
+    public String toRow() {
+        return child + "\t" + samples + "\t" + nounTypes + "\t" +
+                StringUtils.getFormattedTwoDecimal(empirical) + "\t" +
+                StringUtils.getFormattedTwoDecimal(predicted) + "\t" +
+                StringUtils.getFormattedTwoDecimal(simulated) + "\t" +
+                StringUtils.getFormattedTwoDecimal(simulatedStdErr) + "\t" + String.format("%.4f", pValue);
+    }
+
+    /** @return The fitted parameters as a tab-separated row (see {@link #FIT_HEADER}) */
+    public String toFitRow() {
+        StringBuilder probs = new StringBuilder();
+        for (double prob : fit.detProbs)
+            probs.append(probs.length() == 0 ? "" : ",").append(String.format("%.4f", prob));
+        return child + "\t" + String.format("%.4f", fit.exponent) + "\t" +
+                StringUtils.getFormattedTwoDecimal(fit.logLikelihood) + "\t" + fit.iterations + "\t" + probs;
+    }
+
+    /** @return The bootstrap intervals as a tab-separated row (see {@link #BOOTSTRAP_HEADER}) */
+    public String toBootstrapRow() {
+        return child + "\t" + bootstrap.replicates + "\t" + bootstrap.confidence + "\t" +
+                StringUtils.getFormattedTwoDecimal(bootstrap.empiricalMean) + "\t" +
+                StringUtils.getFormattedTwoDecimal(bootstrap.empiricalLow) + "\t" +
+                StringUtils.getFormattedTwoDecimal(bootstrap.empiricalHigh) + "\t" +
+                StringUtils.getFormattedTwoDecimal(bootstrap.predictedMean) + "\t" +
+                StringUtils.getFormattedTwoDecimal(bootstrap.predictedLow) + "\t" +
+                StringUtils.getFormattedTwoDecimal(bootstrap.predictedHigh) + "\t" +
+                StringUtils.getFormattedTwoDecimal(bootstrap.differenceLow) + "\t" +
+                StringUtils.getFormattedTwoDecimal(bootstrap.differenceHigh);
+    }
+}
@@ -0,0 +1,41 @@
+package determiners;
+
+import edu.illinois.cs.cogcomp.core.utilities.StringUtils;
+
+/**
+ * The diversity of a child at a single subsample size, averaged over random orderings of the determiner-noun
+ * pairs (see {@link SubsampleCurve}).
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class CurvePoint {
+    public static final String HEADER = "child\t#samples\t#noun-types\tempirical\tempirical-stderr\tpredicted";
+
+    public final String child;
+    /** The number of determiner-noun pairs of the subsamples */
+    public final int samples;
+    /** The mean number of noun types of the subsamples */
+    public final double nounTypes;
+    public final double empirical;
+    public final double empiricalStdErr;
+    /** The mean predicted diversity of the subsamples (given their number of noun types) */
+    public final double predicted;
+
+    public CurvePoint(String child, int samples, double nounTypes, double empirical, double empiricalStdErr,
+                      double predicted) {
+        this.child = child;
+        this.samples = samples;
+        this.nounTypes = nounTypes;
+        this.empirical = empirical;
+        this.empiricalStdErr = empiricalStdErr;
+        this.predicted = predicted;
+    }
+
+    /** @return The result as a tab-separated row (see {@link #HEADER}) */
+    public String toRow() {
+        return child + "\t" + samples + "\t" + StringUtils.getFormattedTwoDecimal(nounTypes) + "\t" +
+                StringUtils.getFormattedTwoDecimal(empirical) + "\t" +
+                StringUtils.getFormattedTwoDecimal(empiricalStdErr) + "\t" +
+                StringUtils.getFormattedTwoDecimal(predicted);
+    }
+}
@@ -0,0 +1,165 @@
+package determiners;
+
+import determiners.readers.TaggedCorpusReader;
+
+import java.util.Arrays;
+
+/**
+ * The determiner-noun pairs of a corpus. Nouns are interned into a {@link Vocabulary}, and each determiner has
+ * its own column of counts indexed by noun id. The pairs are also kept, in corpus order, as two parallel arrays
+ * of determiner and noun ids.
+ * <p>
+ * Any number of determiners (up to 32) can be used: the set of determiners each noun has appeared with is kept as a
+ * bitmask, so the diversity of any subset of the determiners (e.g. every pair of them) can be counted from the same
+ * table with popcounts instead of re-reading the corpus.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class DetNounTable implements TaggedCorpusReader.PairHandler {
+    private final String[] determiners;
+    private final Vocabulary nouns = new Vocabulary();
+    /** counts[det][noun] */
+    private final int[][] counts;
+    private final int[] detTotals;
+    /** The determiners each noun has appeared with, as a bitmask of determiner ids */
+    private int[] nounMasks = new int[1024];
+
+    private int[] tokenDets = new int[1024], tokenNouns = new int[1024];
+    private int size;
+
+    /**
+     * @param determiners The determiners (columns) of the table; determiner ids are indices into this array
+     */
+    public DetNounTable(String[] determiners) {
+        if (determiners.length > 32)
+            throw new IllegalArgumentException("At most 32 determiners are supported, got " + determiners.length);
+        this.determiners = determiners;
+        this.counts = new int[determiners.length][1024];
+        this.detTotals = new int[determiners.length];
+    }
+
+    @Override
+    public void pair(int det, int noun) {
+        if (size == tokenDets.length) {
+            tokenDets = Arrays.copyOf(tokenDets, 2 * size);
+            tokenNouns = Arrays.copyOf(tokenNouns, 2 * size);
+        }
+        tokenDets[size] = det;
+        tokenNouns[size] = noun;
+        size++;
+
+        if (noun >= counts[det].length) {
+            for (int d = 0; d < counts.length; d++)
+                counts[d] = Arrays.copyOf(counts[d], Math.max(2 * counts[d].length, noun + 1));
+        }
+        counts[det][noun]++;
+        detTotals[det]++;
+        if (noun >= nounMasks.length)
+            nounMasks = Arrays.copyOf(nounMasks, Math.max(2 * nounMasks.length, noun + 1));
+        nounMasks[noun] |= 1 << det;
+    }
+
+    /** The vocabulary of the nouns in the table (the reader interns into it directly) */
+    public Vocabulary nouns() {
+        return nouns;
+    }
+
+    public String[] determiners() {
+        return determiners;
+    }
+
+    /** @return The number of determiner-noun pairs */
+    public int size() {
+        return size;
+    }
+
+    public int numNounTypes() {
+        return nouns.size();
+    }
+
+    public int detCount(int det) {
+        return detTotals[det];
+    }
+
+    /** @return A bitmask containing every determiner of the table */
+    public int allDets() {
+        return determiners.length == 32 ? -1 : (1 << determiners.length) - 1;
+    }
+
+    /** @return The bitmask of the determiners the noun has appeared with */
+    public int detMask(int noun) {
+        return noun < nounMasks.length ? nounMasks[noun] : 0;
+    }
+
+    /** @return The number of noun types that appear with at least one of the determiners of {@code detMask} */
+    public int numNounTypes(int detMask) {
+        int types = 0, numNouns = Math.min(nouns.size(), nounMasks.length);
+        for (int noun = 0; noun < numNouns; noun++)
+            if ((nounMasks[noun] & detMask) != 0) types++;
+        return types;
+    }
+
+    /** @return The number of pairs with one of the determiners of {@code detMask} */
+    public int size(int detMask) {
+        int pairs = 0;
+        for (int det = 0; det < determiners.length; det++)
+            if ((detMask & (1 << det)) != 0) pairs += detTotals[det];
+        return pairs;
+    }
+
+    public int count(int det, int noun) {
+        return noun < counts[det].length ? counts[det][noun] : 0;
+    }
+
+    /** The determiner of every pair in corpus order (only the first {@link #size()} entries are valid) */
+    public int[] tokenDets() {
+        return tokenDets;
+    }
+
+    /** The noun of every pair in corpus order (only the first {@link #size()} entries are valid) */
+    public int[] tokenNouns() {
+        return tokenNouns;
+    }
+
+    /** @return The number of noun types that appear with at least two different determiners */
+    public int diverseTypes() {
+        return diverseTypes(allDets());
+    }
+
+    /**
+     * @param detMask A bitmask of the determiners to consider
+     * @return The number of noun types that appear with at least two different determiners of {@code detMask}
+     */
+    public int diverseTypes(int detMask) {
+        int diverse = 0, numNouns = Math.min(nouns.size(), nounMasks.length);
+        for (int noun = 0; noun < numNouns; noun++) {
+            if (Integer.bitCount(nounMasks[noun] & detMask) >= 2)
+                diverse++;
+        }
+        return diverse;
+    }
+
+    /**
+     * Counts the noun types that appear with at least two different determiners in an arbitrary list of pairs.
+     *
+     * @param dets The determiner ids of the pairs
+     * @param nouns The noun ids of the pairs
+     * @param size The number of pairs
+     * @param detMasks A buffer with at least as many entries as noun types; it is cleared before use
+     * @return The number of diverse noun types
+     */
+    public static int diverseTypes(int[] dets, int[] nouns, int size, int[] detMasks) {
+        Arrays.fill(detMasks, 0);
+        int diverse = 0;
+        for (int i = 0; i < size; i++) {
+            int noun = nouns[i];
+            int mask = detMasks[noun];
+            int newMask = mask | (1 << dets[i]);
+            if (newMask != mask) {
+                if (mask != 0 && Integer.bitCount(mask) == 1) diverse++;
+                detMasks[noun] = newMask;
+            }
+        }
+        return diverse;
+    }
+}
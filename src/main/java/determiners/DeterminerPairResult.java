@@ -0,0 +1,38 @@
+package determiners;
+
+import edu.illinois.cs.cogcomp.core.utilities.StringUtils;
+
+/**
+ * The results of {@link YangReplicator} for a single child and a single pair of determiners, when more than two
+ * determiners are analysed at once.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class DeterminerPairResult {
+    public static final String HEADER = "child\tdet1\tdet2\t#samples\t#noun-types\tempirical\tpredicted";
+
+    public final String child;
+    public final String det1, det2;
+    public final int samples;
+    public final int nounTypes;
+    public final double empirical;
+    public final double predicted;
+
+    public DeterminerPairResult(String child, String det1, String det2, int samples, int nounTypes,
+                                double empirical, double predicted) {
+        this.child = child;
+        this.det1 = det1;
+        this.det2 = det2;
+        this.samples = samples;
+        this.nounTypes = nounTypes;
+        this.empirical = empirical;
+        this.predicted = predicted;
+    }
+
+    /** @return The result as a tab-separated row (see {@link #HEADER}) */
+    public String toRow() {
+        return child + "\t" + det1 + "\t" + det2 + "\t" + samples + "\t" + nounTypes + "\t" +
+                StringUtils.getFormattedTwoDecimal(empirical) + "\t" +
+                StringUtils.getFormattedTwoDecimal(predicted);
+    }
+}
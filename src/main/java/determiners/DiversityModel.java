@@ -0,0 +1,194 @@
+package determiners;
+
+/**
+ * The predicted (expected) diversity of a Zipfian sample of nouns, following Yang (2013): the probability that
+ * a noun of rank {@code r} appears with both determiners in a sample of {@code S} determiner-noun pairs is
+ * <pre>
+ *     (1 - q^S) - [((1 - b) p + q)^S - q^S] - [(b p + q)^S - q^S],  with p = 1 / (r H(N)) and q = 1 - p
+ * </pre>
+ * where {@code b} is the determiner bias and {@code H(N)} the harmonic number of the number of noun types.
+ * For {@code k} determiners with probabilities {@code b_1..b_k} the complementary formulation generalises this
+ * to the probability of seeing at least two different determiners,
+ * <pre>
+ *     1 - q^S - sum_i [(1 - (1 - b_i) p)^S - q^S]
+ * </pre>
+ * which is O(k) per rank.
+ * The powers are computed as {@code exp(S log1p(-x))} and combined with {@code expm1}, since the bases are close
+ * to 1 and {@code Math.pow} loses precision for large sample sizes.
+ *
+ * Ranks are processed in batches of primitive arrays so that the JIT can unroll (and where possible vectorise)
+ * the inner loops. Harmonic numbers are cached incrementally up to {@link #maxCachedHarmonic} and use the
+ * asymptotic expansion beyond that.
+ *
+ * The noun distribution can also be a Zipfian with any exponent {@code s}, with {@code p = r^-s / H(N,s)} (see
+ * {@link ZipfFit}); the generalised harmonic numbers {@code H(N,s)} are summed exactly for the first ranks and
+ * use the Euler-Maclaurin formula for the rest.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class DiversityModel {
+    /** Harmonic numbers up to this size are summed exactly (and cached) */
+    private static final int maxCachedHarmonic = 1 << 20;
+    /** The number of ranks processed at once */
+    static final int batchSize = 1024;
+    private static final double eulerGamma = 0.5772156649015329;
+    /** Generalised harmonic numbers are summed exactly up to this size, and the rest of the sum is approximated */
+    private static final int exactGeneralisedHarmonic = 64;
+
+    /** harmonics[n] = H(n); grown on demand */
+    private static volatile double[] harmonics = {0};
+
+    private DiversityModel() {}
+
+    /**
+     * @param n The number of noun types
+     * @return The harmonic number H(n) = 1 + 1/2 + ... + 1/n
+     */
+    public static double harmonic(int n) {
+        if (n > maxCachedHarmonic) {
+            // H(n) = ln n + gamma + 1/2n - 1/12n^2 + 1/120n^4 - ...; the error is below 1e-25 at this size
+            double inv = 1.0 / n, inv2 = inv * inv;
+            return Math.log(n) + eulerGamma + inv / 2 - inv2 / 12 + inv2 * inv2 / 120;
+        }
+        double[] cache = harmonics;
+        if (n < cache.length) return cache[n];
+        return growHarmonics(n)[n];
+    }
+
+    /**
+     * @param n The number of noun types
+     * @param s The Zipf exponent
+     * @return The generalised harmonic number H(n,s) = 1 + 1/2^s + ... + 1/n^s
+     */
+    public static double harmonic(int n, double s) {
+        if (s == 1) return harmonic(n);
+        int m = Math.min(n, exactGeneralisedHarmonic);
+        double harm = 0;
+        for (int k = 1; k <= m; k++)
+            harm += Math.exp(-s * Math.log(k));
+        if (n == m) return harm;
+        // Euler-Maclaurin for the sum from m to n of f(x) = x^-s (f(m) is already included above)
+        double logM = Math.log(m), logN = Math.log(n);
+        double fm = Math.exp(-s * logM), fn = Math.exp(-s * logN);
+        // (n^(1-s) - m^(1-s)) / (1-s), without cancellation for s close to 1
+        double integral = Math.exp((1 - s) * logM) * Math.expm1((1 - s) * (logN - logM)) / (1 - s);
+        // f'(x) = -s x^-(s+1), f'''(x) = -s(s+1)(s+2) x^-(s+3), f^(5)(x) = -s(s+1)(s+2)(s+3)(s+4) x^-(s+5)
+        double d1 = -s * (fn / n - fm / m);
+        double d3 = -s * (s + 1) * (s + 2) * (fn / Math.pow(n, 3) - fm / Math.pow(m, 3));
+        double d5 = -s * (s + 1) * (s + 2) * (s + 3) * (s + 4) * (fn / Math.pow(n, 5) - fm / Math.pow(m, 5));
+        return harm - fm + integral + (fm + fn) / 2 + d1 / 12 - d3 / 720 + d5 / 30240;
+    }
+
+    private static synchronized double[] growHarmonics(int n) {
+        double[] cache = harmonics;
+        if (n < cache.length) return cache;
+        int size = Math.min(Math.max(n + 1, 2 * cache.length), maxCachedHarmonic + 1);
+        double[] grown = new double[size];
+        System.arraycopy(cache, 0, grown, 0, cache.length);
+        double harm = cache[cache.length - 1];
+        for (int i = cache.length; i < size; i++) {
+            harm += 1.0 / i;
+            grown[i] = harm;
+        }
+        harmonics = grown;
+        return grown;
+    }
+
+    /**
+     * The mean predicted diversity of a Zipfian sample with any number of determiners. The buffers are passed in
+     * (with at least {@link #batchSize} entries each) so that repeated calls do not allocate.
+     *
+     * @param numTypes The number of noun types
+     * @param sampleSize The number of determiner-noun pairs in the sample
+     * @param detProbs The probability of each determiner (summing to 1), e.g. {@code {1 - bias, bias}}
+     * @param useSimpleModel Whether to use the simpler approximation instead of the model of Yang (2013)
+     * @param expected A buffer for the expected diversity of a batch of ranks
+     * @param work A buffer for the noun probabilities of a batch of ranks
+     * @return The predicted percentage of noun types that appear with at least two different determiners
+     */
+    public static double predictedDiversity(int numTypes, double sampleSize, double[] detProbs,
+                                            boolean useSimpleModel, double[] expected, double[] work) {
+        return predictedDiversity(numTypes, sampleSize, 1, detProbs, useSimpleModel, expected, work);
+    }
+
+    /**
+     * The mean predicted diversity of a Zipfian sample with any exponent and any number of determiners, using the
+     * given buffers (of at least {@link #batchSize} entries).
+     *
+     * @param exponent The Zipf exponent of the nouns (1 in Yang (2013))
+     * @see #predictedDiversity(int, double, double[], boolean, double[], double[])
+     */
+    public static double predictedDiversity(int numTypes, double sampleSize, double exponent, double[] detProbs,
+                                            boolean useSimpleModel, double[] expected, double[] work) {
+        double harmonic = harmonic(numTypes, exponent);
+        double totalExpDiversity = 0;
+        for (int from = 1; from <= numTypes; from += batchSize) {
+            int length = Math.min(batchSize, numTypes - from + 1);
+            expectedDiversity(from, length, harmonic, exponent, sampleSize, detProbs, useSimpleModel, expected,
+                    work);
+            for (int i = 0; i < length; i++)
+                totalExpDiversity += expected[i];
+        }
+        return (totalExpDiversity / numTypes) * 100;
+    }
+
+    /**
+     * Computes the expected diversity of a batch of consecutive ranks with any number of determiners.
+     *
+     * @param fromRank The first rank of the batch (starting from 1)
+     * @param length The number of ranks in the batch
+     * @param harmonic The harmonic number of the total number of noun types
+     * @param sampleSize The number of determiner-noun pairs in the sample
+     * @param detProbs The probability of each determiner (summing to 1), e.g. {@code {1 - bias, bias}}
+     * @param useSimpleModel Whether to use the simpler approximation instead of the model of Yang (2013)
+     * @param expected Receives the expected diversity (between 0 and 1) of each rank, starting at index 0
+     * @param work A buffer of at least {@code length} entries
+     */
+    public static void expectedDiversity(int fromRank, int length, double harmonic, double sampleSize,
+                                         double[] detProbs, boolean useSimpleModel, double[] expected, double[] work) {
+        expectedDiversity(fromRank, length, harmonic, 1, sampleSize, detProbs, useSimpleModel, expected, work);
+    }
+
+    /**
+     * Computes the expected diversity of a batch of consecutive ranks of a Zipfian with any exponent.
+     *
+     * @param harmonic The generalised harmonic number H(N,s) of the total number of noun types
+     * @param exponent The Zipf exponent s of the nouns
+     * @see #expectedDiversity(int, int, double, double, double[], boolean, double[], double[])
+     */
+    public static void expectedDiversity(int fromRank, int length, double harmonic, double exponent,
+                                         double sampleSize, double[] detProbs, boolean useSimpleModel,
+                                         double[] expected, double[] work) {
+        double[] nounProbs = work;
+        if (exponent == 1) {
+            for (int i = 0; i < length; i++)
+                nounProbs[i] = 1 / ((fromRank + i) * harmonic);
+        }
+        else {
+            for (int i = 0; i < length; i++)
+                nounProbs[i] = Math.exp(-exponent * Math.log(fromRank + i)) / harmonic;
+        }
+        int k = detProbs.length;
+
+        if (useSimpleModel) {
+            // 1 - sum_i b_i^(pS), rewritten with expm1
+            for (int i = 0; i < length; i++)
+                expected[i] = 1 - k;
+            for (double detProb : detProbs) {
+                double logDet = Math.log(detProb);
+                for (int i = 0; i < length; i++)
+                    expected[i] -= Math.expm1(nounProbs[i] * sampleSize * logDet);
+            }
+        }
+        else {
+            // 1 - q^S - sum_i [(1 - (1 - b_i)p)^S - q^S] = (k - 1)(q^S - 1) - sum_i [(1 - (1 - b_i)p)^S - 1]
+            for (int i = 0; i < length; i++)
+                expected[i] = (k - 1) * Math.expm1(sampleSize * Math.log1p(-nounProbs[i]));
+            for (double detProb : detProbs) {
+                double otherProb = 1 - detProb;
+                for (int i = 0; i < length; i++)
+                    expected[i] -= Math.expm1(sampleSize * Math.log1p(-otherProb * nounProbs[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package determiners;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import determiners.readers.CorpusCache;
+import determiners.readers.TaggedCorpusReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-running local HTTP service that answers diversity queries without restarting the JVM or re-reading the
+ * corpora. All the {@code <child>.txt} files of a folder are loaded once (through their {@link CorpusCache}), and
+ * the tables of every determiner set, their Zipf fits and the predicted diversities are kept in LRU caches.
+ *
+ * Endpoints (all {@code GET}, answering JSON):
+ * <ul>
+ *     <li>{@code /children}: the names of the loaded children</li>
+ *     <li>{@code /diversity?child=adam}: the empirical and predicted diversity of a child, with the optional
+ *     parameters
+ *     <ul>
+ *         <li>{@code dets}: at least two different comma-separated determiners (default {@code a,the})</li>
+ *         <li>{@code sample}: the number of pairs of a random subsample (default: all the pairs)</li>
+ *         <li>{@code seed}: the seed of the subsample (default 42)</li>
+ *         <li>{@code model}: {@code yang} or {@code simple} (default {@code yang})</li>
+ *         <li>{@code probs}: the determiner probabilities of the predicted diversity: {@code yang} ("the" is
+ *         twice as likely as "a", only for the default determiners), {@code empirical} or {@code fit} (empirical,
+ *         with a fitted Zipf exponent, see {@link ZipfFit}) (default {@code yang})</li>
+ *     </ul></li>
+ * </ul>
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class DiversityService {
+    /** The folder with the {@code <child>.txt} files, unless one is given as the first argument */
+    private static final String dataFolder = "data/tagged";
+    /** Where the binary caches of the corpora are kept */
+    private static final String cacheFolder = "data/cache";
+    /** The port to listen on (on the loopback interface), unless one is given as the second argument */
+    private static final int port = 8080;
+    /** The number of queries answered at the same time */
+    private static final int numThreads = Runtime.getRuntime().availableProcessors();
+    /** The maximum number of (child, determiners) tables kept */
+    private static final int maxTables = 64;
+    /** The maximum number of Zipf fits (of whole tables or subsamples) kept */
+    private static final int maxFits = 10000;
+    /** The maximum number of predicted diversities kept */
+    private static final int maxPredicted = 100000;
+
+    private static final Metrics.Counter queriesCounter = Metrics.counter("service.queries");
+    private static final Metrics.Stage queryStage = Metrics.stage("service");
+
+    private final Map<String, CorpusCache.CachedCorpus> corpora = new TreeMap<>();
+    private final Map<String, DetNounTable> tables = new LruCache<>(maxTables);
+    private final Map<String, ZipfFit.Result> fits = new LruCache<>(maxFits);
+    private final Map<String, Double> predicted = new LruCache<>(maxPredicted);
+
+    public static void main(String[] args) throws IOException {
+        String folder = (args.length > 0) ? args[0] : dataFolder;
+        int listenPort = (args.length > 1) ? Integer.parseInt(args[1]) : port;
+        DiversityService service = new DiversityService(folder, cacheFolder);
+        service.start(listenPort, numThreads);
+        System.out.println("Loaded " + service.corpora.keySet() + "; listening on http://localhost:" + listenPort);
+    }
+
+    /**
+     * Loads all the corpora of a folder.
+     *
+     * @param dataFolder The folder containing the preprocessed (cleaned and tagged) {@code <child>.txt} files
+     * @param cacheFolder Where the binary caches of the corpora are kept
+     */
+    public DiversityService(String dataFolder, String cacheFolder) throws IOException {
+        CorpusCache cache = new CorpusCache(cacheFolder);
+        for (String child : new BatchRunner(dataFolder, 1).children())
+            corpora.put(child, cache.load(dataFolder + File.separator + child + ".txt"));
+    }
+
+    /** Starts answering queries on {@code localhost:port} */
+    public HttpServer start(int port, int numThreads) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/children", new JsonHandler() {
+            @Override
+            String answer(Map<String, String> params) {
+                StringBuilder json = new StringBuilder("{\"children\": [");
+                String separator = "";
+                for (String child : corpora.keySet()) {
+                    json.append(separator).append(quote(child));
+                    separator = ", ";
+                }
+                return json.append("]}").toString();
+            }
+        });
+        server.createContext("/diversity", new JsonHandler() {
+            @Override
+            String answer(Map<String, String> params) {
+                return diversity(params);
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    /** Answers a {@code /diversity} query */
+    String diversity(Map<String, String> params) {
+        String child = params.get("child");
+        if (child == null) throw new IllegalArgumentException("Missing parameter: child");
+        CorpusCache.CachedCorpus corpus = corpora.get(child);
+        if (corpus == null) throw new IllegalArgumentException("Unknown child: " + child);
+        String[] determiners = params.containsKey("dets") ? determiners(params.get("dets"))
+                : TaggedCorpusReader.DETERMINERS;
+        String model = get(params, "model", "yang");
+        if (!model.equals("yang") && !model.equals("simple"))
+            throw new IllegalArgumentException("Unknown model: " + model);
+        boolean useSimpleModel = model.equals("simple");
+        String probs = get(params, "probs", "yang");
+        if (!probs.equals("yang") && !probs.equals("empirical") && !probs.equals("fit"))
+            throw new IllegalArgumentException("Unknown probs: " + probs);
+        long seed = Long.parseLong(get(params, "seed", "42"));
+
+        String key = child + "\t" + Arrays.toString(determiners);
+        DetNounTable table = table(key, corpus, determiners);
+        int sample = params.containsKey("sample") ? Integer.parseInt(params.get("sample")) : table.size();
+        if (sample <= 0 || sample > table.size())
+            throw new IllegalArgumentException("The sample must be between 1 and " + table.size());
+        if (sample < table.size()) {
+            table = subsample(table, sample, seed);
+            key += "\t" + sample + "\t" + seed;
+        }
+
+        int numTypes = table.numNounTypes();
+        double empirical = ((double) table.diverseTypes() / numTypes) * 100;
+        double exponent = 1;
+        double[] detProbs = new double[determiners.length];
+        if (probs.equals("yang") && Arrays.equals(determiners, TaggedCorpusReader.DETERMINERS))
+            detProbs = new double[]{1.0 / 3.0, 2.0 / 3.0};
+        else {
+            for (int det = 0; det < determiners.length; det++)
+                detProbs[det] = (double) table.detCount(det) / table.size();
+            if (probs.equals("fit")) exponent = fit(key, table).exponent;
+        }
+        double predicted = predicted(numTypes, table.size(), exponent, detProbs, useSimpleModel);
+
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"child\": ").append(quote(child)).append(", \"determiners\": [");
+        for (int det = 0; det < determiners.length; det++)
+            json.append(det == 0 ? "" : ", ").append(quote(determiners[det]));
+        json.append("], \"samples\": ").append(table.size());
+        json.append(", \"nounTypes\": ").append(numTypes);
+        json.append(", \"exponent\": ").append(exponent);
+        json.append(", \"empirical\": ").append(empirical);
+        json.append(", \"predicted\": ").append(predicted);
+        return json.append("}").toString();
+    }
+
+    /**
+     * @param dets The value of the {@code dets} parameter
+     * @return The determiners, if there are at least two and they are all different and non-empty
+     */
+    static String[] determiners(String dets) {
+        String[] determiners = dets.split(",", -1);
+        if (determiners.length < 2)
+            throw new IllegalArgumentException("At least two determiners are needed, got dets=" + dets);
+        for (int det = 0; det < determiners.length; det++) {
+            if (determiners[det].isEmpty())
+                throw new IllegalArgumentException("Empty determiner in dets=" + dets);
+            for (int other = 0; other < det; other++) {
+                if (determiners[det].equals(determiners[other]))
+                    throw new IllegalArgumentException("Duplicate determiner: " + determiners[det]);
+            }
+        }
+        return determiners;
+    }
+
+    /**
+     * @param key The child and the determiners of the table
+     * @return The (cached) table of the determiner-noun pairs of a child
+     */
+    private DetNounTable table(String key, CorpusCache.CachedCorpus corpus, String[] determiners) {
+        synchronized (tables) {
+            DetNounTable table = tables.get(key);
+            if (table != null) return table;
+        }
+        DetNounTable table = corpus.toTable(determiners);
+        synchronized (tables) {
+            tables.put(key, table);
+        }
+        return table;
+    }
+
+    /**
+     * @param key The child and the determiners of the table (and the size and seed of the subsample, if any)
+     * @return The (cached) Zipf fit of a table
+     */
+    private ZipfFit.Result fit(String key, DetNounTable table) {
+        synchronized (fits) {
+            ZipfFit.Result fit = fits.get(key);
+            if (fit != null) return fit;
+        }
+        ZipfFit.Result fit = ZipfFit.fit(table);
+        synchronized (fits) {
+            fits.put(key, fit);
+        }
+        return fit;
+    }
+
+    /** @return The (cached) predicted diversity */
+    private double predicted(int numTypes, int sampleSize, double exponent, double[] detProbs,
+                             boolean useSimpleModel) {
+        String key = numTypes + "\t" + sampleSize + "\t" + exponent + "\t" + Arrays.toString(detProbs) + "\t" +
+                useSimpleModel;
+        synchronized (predicted) {
+            Double value = predicted.get(key);
+            if (value != null) return value;
+        }
+        double value = DiversityModel.predictedDiversity(numTypes, sampleSize, exponent, detProbs, useSimpleModel,
+                new double[DiversityModel.batchSize], new double[DiversityModel.batchSize]);
+        synchronized (predicted) {
+            predicted.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return A table of {@code sample} pairs of {@code table}, drawn at random without replacement (in corpus
+     * order)
+     */
+    static DetNounTable subsample(DetNounTable table, int sample, long seed) {
+        int size = table.size();
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) indices[i] = i;
+        // Partial Fisher-Yates: the first sample entries are a uniformly random subset
+        SplittableRng random = new SplittableRng(seed);
+        for (int i = 0; i < sample; i++) {
+            int j = i + random.nextInt(size - i);
+            int tmp = indices[i];
+            indices[i] = indices[j];
+            indices[j] = tmp;
+        }
+        Arrays.sort(indices, 0, sample);
+
+        DetNounTable subsample = new DetNounTable(table.determiners());
+        int[] dets = table.tokenDets(), nouns = table.tokenNouns();
+        for (int i = 0; i < sample; i++) {
+            int pair = indices[i];
+            subsample.pair(dets[pair], subsample.nouns().id(table.nouns().word(nouns[pair])));
+        }
+        return subsample;
+    }
+
+    private static String get(Map<String, String> params, String name, String defaultValue) {
+        String value = params.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static String quote(String string) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') json.append('\\').append(c);
+            else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+        }
+        return json.append('"').toString();
+    }
+
+    /** Parses the query parameters and writes the JSON answer (or the error) of a request */
+    private abstract static class JsonHandler implements HttpHandler {
+        abstract String answer(Map<String, String> params);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int status = 200;
+            String json;
+            Metrics.Span span = queryStage.span();
+            try {
+                queriesCounter.increment();
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    status = 405;
+                    json = "{\"error\": \"Only GET is supported\"}";
+                }
+                else json = answer(parse(exchange.getRequestURI().getRawQuery()));
+            }
+            catch (IllegalArgumentException e) {
+                status = 400;
+                json = "{\"error\": " + quote(String.valueOf(e.getMessage())) + "}";
+            }
+            catch (RuntimeException e) {
+                status = 500;
+                json = "{\"error\": " + quote(e.toString()) + "}";
+            }
+            finally {
+                span.stop();
+            }
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        private static Map<String, String> parse(String query) throws UnsupportedEncodingException {
+            Map<String, String> params = new HashMap<>();
+            if (query == null) return params;
+            for (String param : query.split("&")) {
+                if (param.isEmpty()) continue;
+                int equals = param.indexOf('=');
+                String name = (equals < 0) ? param : param.substring(0, equals);
+                String value = (equals < 0) ? "" : param.substring(equals + 1);
+                params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+            return params;
+        }
+    }
+
+    /** A map that keeps at most a fixed number of entries, dropping the least recently used ones */
+    private static class LruCache<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        LruCache(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package determiners;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight run metrics: named counters and per-stage timers (read, dedup, count, shuffle, predict, ...),
+ * exported as a JSON and a tab-separated summary at the end of a run.
+ *
+ * Metrics are only collected when the JVM is started with {@code -Dmetrics=true}. The flag is a
+ * {@code static final} constant, so when it is off the JIT folds every check away and the instrumented code runs
+ * as if it were not there. Hot loops should count locally and {@link Counter#add(long)} once per batch, and use
+ * {@link Stage#start()}/{@link Stage#stop(long)} rather than {@link Stage#span()}, which allocates.
+ *
+ * Stage times are summed over all the threads that ran the stage, so with several worker threads they can exceed
+ * the wall-clock time of the run. A counter named {@code <stage>.<name>} is also reported per second of its stage.
+ * Spans also record the bytes allocated by their thread, where the JVM supports it.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public final class Metrics {
+    /** Whether metrics are collected ({@code -Dmetrics=true}) */
+    public static final boolean enabled = Boolean.getBoolean("metrics");
+
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Stage> stages = new ConcurrentHashMap<>();
+    private static final Span noSpan = new Span(null);
+    private static final com.sun.management.ThreadMXBean allocationBean = allocationBean();
+    private static volatile long startTime = System.nanoTime();
+
+    private Metrics() {}
+
+    /** A named counter; updates are ignored unless metrics are {@link #enabled} */
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void add(long n) {
+            if (enabled) value.addAndGet(n);
+        }
+
+        public void increment() {
+            if (enabled) value.incrementAndGet();
+        }
+
+        public long value() {
+            return value.get();
+        }
+    }
+
+    /** A named pipeline stage, accumulating the number of calls, the time and the bytes allocated */
+    public static class Stage {
+        private final AtomicLong calls = new AtomicLong(), nanos = new AtomicLong(), bytes = new AtomicLong();
+        private final AtomicLong spans = new AtomicLong();
+
+        /** @return The start time of a call to pass to {@link #stop(long)} (0 if metrics are disabled) */
+        public long start() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        /** Records a call started at {@code start} (time only) */
+        public void stop(long start) {
+            if (enabled) {
+                nanos.addAndGet(System.nanoTime() - start);
+                calls.incrementAndGet();
+            }
+        }
+
+        /** @return A call that also records the allocation of the current thread, until {@link Span#stop()} */
+        public Span span() {
+            return enabled ? new Span(this) : noSpan;
+        }
+
+        public long calls() {
+            return calls.get();
+        }
+
+        public double seconds() {
+            return nanos.get() / 1e9;
+        }
+
+        /**
+         * @return The bytes allocated during the spans of the stage, or -1 if the JVM does not measure them or the
+         * stage was only timed with {@link #start()}/{@link #stop(long)}
+         */
+        public long allocatedBytes() {
+            return (allocationBean == null || spans.get() == 0) ? -1 : bytes.get();
+        }
+    }
+
+    /** A single call of a {@link Stage}, recorded when it is stopped (in a {@code finally} block) */
+    public static class Span {
+        private final Stage stage;
+        private final long start, startBytes;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            this.startBytes = (stage == null || allocationBean == null) ? 0 : allocatedBytes();
+            this.start = (stage == null) ? 0 : System.nanoTime();
+        }
+
+        public void stop() {
+            if (stage == null) return;
+            stage.stop(start);
+            if (allocationBean != null) {
+                stage.bytes.addAndGet(allocatedBytes() - startBytes);
+                stage.spans.incrementAndGet();
+            }
+        }
+    }
+
+    /** @return The counter with the given name, created if needed */
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter != null) return counter;
+        counter = new Counter();
+        Counter existing = counters.putIfAbsent(name, counter);
+        return existing == null ? counter : existing;
+    }
+
+    /** @return The stage with the given name, created if needed */
+    public static Stage stage(String name) {
+        Stage stage = stages.get(name);
+        if (stage != null) return stage;
+        stage = new Stage();
+        Stage existing = stages.putIfAbsent(name, stage);
+        return existing == null ? stage : existing;
+    }
+
+    /** Clears all the metrics and restarts the wall-clock time of the run */
+    public static void reset() {
+        for (Counter counter : counters.values())
+            counter.value.set(0);
+        for (Stage stage : stages.values()) {
+            stage.calls.set(0);
+            stage.nanos.set(0);
+            stage.bytes.set(0);
+            stage.spans.set(0);
+        }
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Writes the summary of the run to {@code <prefix>.json} and {@code <prefix>.csv} (tab-separated), if metrics
+     * are enabled.
+     */
+    public static void write(String prefix) throws IOException {
+        if (!enabled) return;
+        double wallSeconds = (System.nanoTime() - startTime) / 1e9;
+        Map<String, Stage> sortedStages = new TreeMap<>(stages);
+        Map<String, Counter> sortedCounters = new TreeMap<>(counters);
+
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(prefix + ".json"), StandardCharsets.UTF_8)) {
+            out.write("{\n  \"wallSeconds\": " + wallSeconds + ",\n  \"stages\": {");
+            String separator = "\n";
+            for (Map.Entry<String, Stage> entry : sortedStages.entrySet()) {
+                Stage stage = entry.getValue();
+                out.write(separator + "    \"" + entry.getKey() + "\": {\"calls\": " + stage.calls() +
+                        ", \"seconds\": " + stage.seconds() + ", \"allocatedBytes\": " + stage.allocatedBytes() +
+                        "}");
+                separator = ",\n";
+            }
+            out.write("\n  },\n  \"counters\": {");
+            separator = "\n";
+            for (Map.Entry<String, Counter> entry : sortedCounters.entrySet()) {
+                out.write(separator + "    \"" + entry.getKey() + "\": {\"value\": " + entry.getValue().value());
+                double rate = perSecond(entry.getKey(), entry.getValue());
+                if (!Double.isNaN(rate)) out.write(", \"perSecond\": " + rate);
+                out.write("}");
+                separator = ",\n";
+            }
+            out.write("\n  }\n}\n");
+        }
+
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(prefix + ".csv"), StandardCharsets.UTF_8)) {
+            out.write("kind\tname\tcount\tseconds\tallocated-bytes\tper-second");
+            out.newLine();
+            out.write("run\twall\t1\t" + wallSeconds + "\t\t");
+            out.newLine();
+            for (Map.Entry<String, Stage> entry : sortedStages.entrySet()) {
+                Stage stage = entry.getValue();
+                out.write("stage\t" + entry.getKey() + "\t" + stage.calls() + "\t" + stage.seconds() + "\t" +
+                        stage.allocatedBytes() + "\t");
+                out.newLine();
+            }
+            for (Map.Entry<String, Counter> entry : sortedCounters.entrySet()) {
+                double rate = perSecond(entry.getKey(), entry.getValue());
+                out.write("counter\t" + entry.getKey() + "\t" + entry.getValue().value() + "\t\t\t" +
+                        (Double.isNaN(rate) ? "" : rate));
+                out.newLine();
+            }
+        }
+    }
+
+    /** @return The rate of a {@code <stage>.<name>} counter per second of its stage, or NaN */
+    private static double perSecond(String name, Counter counter) {
+        int dot = name.indexOf('.');
+        if (dot < 0) return Double.NaN;
+        Stage stage = stages.get(name.substring(0, dot));
+        if (stage == null || stage.nanos.get() == 0) return Double.NaN;
+        return counter.value() / stage.seconds();
+    }
+
+    private static long allocatedBytes() {
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (!enabled) return null;
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) bean;
+            if (!allocation.isThreadAllocatedMemorySupported()) return null;
+            allocation.setThreadAllocatedMemoryEnabled(true);
+            return allocation;
+        }
+        catch (LinkageError | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package determiners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A permutation test for the empirical diversity of a corpus: the determiners of the determiner-noun pairs are
+ * randomly reassigned to the nouns (keeping the frequency of every noun and every determiner) and the diversity
+ * of each permuted sample is compared with the observed one.
+ *
+ * Permutations are split into tasks of a fixed size that run in parallel on a shared pool, owned by the caller (so
+ * that the tests of several corpora run at the same time do not each start their own threads). Each task shuffles
+ * its own copy of the determiner ids in place (Fisher-Yates), reuses its buffers between permutations and draws
+ * from its own {@link SplittableRng} stream, so the result for a given seed does not depend on the number of
+ * threads.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class PermutationTest {
+    /** The number of permutations run by a single task */
+    private static final int permutationsPerTask = 256;
+
+    private static final Metrics.Stage shuffleStage = Metrics.stage("shuffle");
+    private static final Metrics.Counter permutationsCounter = Metrics.counter("shuffle.permutations");
+    private static final Metrics.Counter drawsCounter = Metrics.counter("shuffle.rng-draws");
+
+    /** The diversity of the permuted samples, as a percentage of the noun types */
+    public static class Result {
+        public final int permutations;
+        public final double mean;
+        public final double stdErr;
+        /** Two-sided empirical p-value of the observed diversity */
+        public final double pValue;
+
+        Result(int permutations, double mean, double stdErr, double pValue) {
+            this.permutations = permutations;
+            this.mean = mean;
+            this.stdErr = stdErr;
+            this.pValue = pValue;
+        }
+    }
+
+    private final DetNounTable table;
+    private final ExecutorService executor;
+    private final SplittableRng master;
+
+    /**
+     * @param table The determiner-noun pairs of the corpus
+     * @param executor The pool that runs the permutation tasks; it is not shut down by the test
+     * @param seed The master seed of the permutations
+     */
+    public PermutationTest(DetNounTable table, ExecutorService executor, long seed) {
+        this.table = table;
+        this.executor = executor;
+        this.master = new SplittableRng(seed);
+    }
+
+    /**
+     * @param numPermutations The number of random permutations
+     * @return The mean and std. error of the permuted diversity, and the p-value of the observed diversity
+     */
+    public Result run(int numPermutations) {
+        int observed = table.diverseTypes();
+        List<Future<Partial>> futures = new ArrayList<>();
+        RunningStats stats = new RunningStats();
+        long atMost = 0, atLeast = 0;
+        try {
+            int task = 0;
+            for (int from = 0; from < numPermutations; from += permutationsPerTask) {
+                int count = Math.min(permutationsPerTask, numPermutations - from);
+                futures.add(executor.submit(new PermutationTask(master.split(task++), count, observed)));
+            }
+            for (Future<Partial> future : futures) {
+                Partial partial = future.get();
+                stats.merge(partial.stats);
+                atMost += partial.atMost;
+                atLeast += partial.atLeast;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            for (Future<Partial> future : futures)
+                future.cancel(true);
+        }
+        double pValue = Math.min(1.0, 2.0 * (Math.min(atMost, atLeast) + 1) / (numPermutations + 1));
+        return new Result(numPermutations, stats.mean(), stats.stdErr(), pValue);
+    }
+
+    private static class Partial {
+        final RunningStats stats = new RunningStats();
+        /** The number of permutations with a diversity at most/at least the observed one */
+        long atMost, atLeast;
+    }
+
+    private class PermutationTask implements Callable<Partial> {
+        private final SplittableRng random;
+        private final int count;
+        private final int observed;
+
+        PermutationTask(SplittableRng random, int count, int observed) {
+            this.random = random;
+            this.count = count;
+            this.observed = observed;
+        }
+
+        @Override
+        public Partial call() {
+            Metrics.Span span = shuffleStage.span();
+            try {
+                return permute();
+            }
+            finally {
+                span.stop();
+            }
+        }
+
+        private Partial permute() {
+            int size = table.size();
+            int[] dets = Arrays.copyOf(table.tokenDets(), size);
+            int[] nouns = table.tokenNouns();
+            int[] detMasks = new int[table.numNounTypes()];
+            double numNounTypes = table.numNounTypes();
+            Partial partial = new Partial();
+            for (int p = 0; p < count; p++) {
+                // Shuffling the previous permutation again gives another uniformly random permutation
+                for (int i = size - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int tmp = dets[i];
+                    dets[i] = dets[j];
+                    dets[j] = tmp;
+                }
+                int diverse = DetNounTable.diverseTypes(dets, nouns, size, detMasks);
+                partial.stats.add((diverse / numNounTypes) * 100);
+                if (diverse <= observed) partial.atMost++;
+                if (diverse >= observed) partial.atLeast++;
+            }
+            permutationsCounter.add(count);
+            drawsCounter.add((long) count * Math.max(size - 1, 0));
+            return partial;
+        }
+    }
+}
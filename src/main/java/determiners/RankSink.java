@@ -0,0 +1,22 @@
+package determiners;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the raw per-rank results of a {@link Simulation} round as they are computed, so that they never need
+ * to be held in memory.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public interface RankSink extends Closeable {
+    /**
+     * @param nounFreq The frequency of the noun of this rank
+     * @param expectedDiversity The predicted diversity of the noun (between 0 and 1)
+     * @param empiricalDiversity Whether the noun was sampled with both determiners (0 or 1)
+     */
+    void rank(int nounFreq, double expectedDiversity, int empiricalDiversity) throws IOException;
+
+    /** Called once after the last rank with the predicted and empirical diversity of the whole round */
+    void summary(double predicted, double empirical) throws IOException;
+}
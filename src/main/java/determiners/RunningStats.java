@@ -0,0 +1,57 @@
+package determiners;
+
+/**
+ * Mean and standard error of a stream of values (Welford's algorithm). Unlike {@code OneVariableStats},
+ * two partial accumulators can be {@link #merge(RunningStats) merged}, so each parallel task can keep its own.
+ * Merging the same partials in the same order always gives the same result.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class RunningStats {
+    private long count;
+    private double mean;
+    private double m2;
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    /** Adds all the values seen by {@code other} to this accumulator */
+    public void merge(RunningStats other) {
+        if (other.count == 0) return;
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return mean;
+    }
+
+    /** @return The (sample) standard error of the mean, or 0 if fewer than two values were added */
+    public double stdErr() {
+        if (count < 2) return 0;
+        return Math.sqrt(m2 / (count - 1)) / Math.sqrt(count);
+    }
+
+    public void reset() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+    }
+}
@@ -0,0 +1,13 @@
+package determiners;
+
+/**
+ * How {@link Simulation} decides whether a noun of a given frequency was seen with both determiners.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public enum SamplingMode {
+    /** Draw a determiner for every token of the noun (reference implementation, O(frequency) draws per noun) */
+    PER_TOKEN,
+    /** A single draw per noun against the closed-form probability 1 - bias^n - (1 - bias)^n */
+    CLOSED_FORM
+}
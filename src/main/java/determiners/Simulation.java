@@ -1,13 +1,12 @@
 package determiners;
 
 import edu.illinois.cs.cogcomp.core.datastructures.Pair;
-import edu.illinois.cs.cogcomp.core.io.LineIO;
-import edu.illinois.cs.cogcomp.core.stats.OneVariableStats;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 /**
  * Creates a synthetic Zipfian dataset of noun-determiner pairs (with a determiner bias) and compares
@@ -20,104 +19,200 @@ public class Simulation {
     private static final double bias = 2.0/3.0;
     /** The maximum number of types to consider */
     private static final int maxTypes = 1000;
+    /** The minimum number of types to consider */
+    private static final int minTypes = 10;
+    /** The step between two numbers of types (on a linear grid) */
+    private static final int increment = 10;
+    /** Whether to space the numbers of types evenly on a log scale (instead of every {@link #increment}) */
+    private static final boolean useLogGrid = false;
+    /** The number of points of the log-spaced grid */
+    private static final int logGridPoints = 100;
+    /**
+     * Whether to compute the total sample size of each number of types exactly, with an O(sqrt(N)) integer sum,
+     * instead of with the O(N) floating-point loop of the reference implementation (which truncates as it goes)
+     */
+    private static final boolean incrementalSweep = true;
     /** Multiplied to maxTypes to get the frequency of the most frequent noun */
     private static final double multiplier = 1.0;
     /** Run the experiment maxRounds to collect mean/std. err */
     private static final int maxRounds = 50;
     /** Whether to use a simpler approximation for the predicted diversity */
     private static final boolean useSimpleModel = false;
+    /** How the empirical diversity of each noun is sampled ({@code PER_TOKEN} is the reference implementation) */
+    private static final SamplingMode samplingMode = SamplingMode.PER_TOKEN;
     /** Which number of types to output raw results for */
     private static final int numTypesRawResults = 100;
+    /** Whether to write the raw results in the compact binary format (see {@link BinaryRankSink}) instead of TSV */
+    private static final boolean binaryRawResults = false;
+    /** The master seed; the output is identical for a given seed regardless of {@link #numThreads} */
+    private static final long seed = 42;
+    /** The number of worker threads used to run the rounds */
+    private static final int numThreads = Runtime.getRuntime().availableProcessors();
 
-    private static Random random = new Random();
-    private static OneVariableStats predicted = new OneVariableStats();
-    private static OneVariableStats empirical = new OneVariableStats();
-    private static List<String> rawNumbers;
+    private static final Metrics.Stage predictStage = Metrics.stage("predict");
+    private static final Metrics.Stage sampleStage = Metrics.stage("sample");
+    private static final Metrics.Counter ranksCounter = Metrics.counter("sample.ranks");
+    private static final Metrics.Counter drawsCounter = Metrics.counter("sample.rng-draws");
 
     public static void main(String[] args) throws IOException {
-        List<String> results = new ArrayList<>();
-        results.add("totalTypes\tmeasure\tvalue\tstderr");
-        int increment = 10;
-        for (int totalTypes = 10; totalTypes <= maxTypes; totalTypes += increment) {
-            int maxNounFreq = (int) Math.round(totalTypes * multiplier);
-            Pair<Double, Double> pair;
-            // Simulate maxRounds to collect mean/std. err
-            for (int i = 0; i < maxRounds; i++) {
-                pair = simulate(totalTypes, maxNounFreq, bias, useSimpleModel, false);
-                predicted.add(pair.getFirst());
-                empirical.add(pair.getSecond());
-            }
+        int[] typeSteps = useLogGrid ? SweepGrid.logSpaced(minTypes, maxTypes, logGridPoints)
+                : SweepGrid.linear(minTypes, maxTypes, increment);
 
-            double predErr = predicted.stdErr();
-            if (Double.isNaN(predErr)) predErr = 0;
-            double empiricalErr = empirical.stdErr();
-            results.add(totalTypes + "\tpredicted\t" + predicted.mean() + "\t" + predErr);
-            results.add(totalTypes + "\tempirical\t" + empirical.mean() + "\t" + empiricalErr);
-            predicted.reset();
-            empirical.reset();
+        // Simulate maxRounds (in parallel) to collect mean/std. err; rows are written as soon as each step is done
+        try (final BufferedWriter results = Files.newBufferedWriter(Paths.get("sim-average.csv"),
+                StandardCharsets.UTF_8)) {
+            results.write("totalTypes\tmeasure\tvalue\tstderr");
+            results.newLine();
+            SimulationEngine engine = new SimulationEngine(numThreads, seed);
+            engine.run(typeSteps, maxRounds, multiplier, bias, useSimpleModel, samplingMode, incrementalSweep,
+                    new SimulationEngine.StepHandler() {
+                        @Override
+                        public void step(SimulationEngine.StepResult step) throws IOException {
+                            // The predicted diversity is the same in every round
+                            results.write(step.totalTypes + "\tpredicted\t" + step.predicted + "\t" + 0.0);
+                            results.newLine();
+                            results.write(step.totalTypes + "\tempirical\t" + step.empirical.mean() + "\t" +
+                                    step.empirical.stdErr());
+                            results.newLine();
+                            results.flush();
+                        }
+                    });
         }
-        LineIO.write("sim-average.csv", results);
 
-        // Simulate one round to get the raw numbers
-        rawNumbers = new ArrayList<>();
-        rawNumbers.add("nounFreq\texpectedDiversity\tempiricalDiversity");
+        // Simulate one round to get the raw numbers (streamed to the file rank by rank)
         int maxNounFreq = (int) Math.round(numTypesRawResults * multiplier);
-        Pair<Double, Double> pair = simulate(numTypesRawResults, maxNounFreq, bias, useSimpleModel, true);
-        rawNumbers.add(System.lineSeparator() + "Sim:\t" + pair.getFirst() + "\t" + pair.getSecond());
-        LineIO.write("sim-raw@" + numTypesRawResults + ".csv", rawNumbers);
+        SplittableRng random = new SplittableRng(seed).split(-numTypesRawResults);
+        String rawFile = "sim-raw@" + numTypesRawResults + (binaryRawResults ? ".bin" : ".csv");
+        try (RankSink rawSink = binaryRawResults ? new BinaryRankSink(rawFile) : new TsvRankSink(rawFile)) {
+            Pair<Double, Double> pair = simulate(numTypesRawResults, maxNounFreq,
+                    totalSampleSize(numTypesRawResults, maxNounFreq), bias, useSimpleModel, samplingMode, random,
+                    rawSink);
+            rawSink.summary(pair.getFirst(), pair.getSecond());
+        }
+        Metrics.write("sim-metrics");
     }
 
     /**
-     * Runs one round of the simulation.
+     * Runs one round of the simulation, given the total sample size (see {@link #totalSampleSize(int, int)}).
+     * The ranks are processed in fixed-size batches, so the memory used does not depend on {@code totalTypes}.
      *
      * @param totalTypes The number of total noun types
      * @param maxNounFreq The frequency of the most frequent noun
+     * @param totalSampleSize The total number of determiner-noun pairs
      * @param bias The determiner bias
      * @param useSimpleModel Whether to use a simpler model (set to {@code false} to use the model from Yang (2013)
-     * @param addRawNumbers Whether to add the raw results of the run to the output file
+     * @param samplingMode How to sample the empirical diversity of each noun
+     * @param random The random stream of this round
+     * @param rawSink If not {@code null}, receives the raw results of every rank
      * @return A pair of values for predicted and empirical diversity
      */
-    private static Pair<Double, Double> simulate(int totalTypes, int maxNounFreq, double bias,
-                                                 boolean useSimpleModel, boolean addRawNumbers) {
-        double aBias = (1 - bias);
-        double harmonic = 0;
-        for (double i = 1; i < totalTypes + 1; i++) {
-            harmonic += 1/i;
-        }
-
+    static Pair<Double, Double> simulate(int totalTypes, int maxNounFreq, double totalSampleSize, double bias,
+                                         boolean useSimpleModel, SamplingMode samplingMode, SplittableRng random,
+                                         RankSink rawSink) throws IOException {
+        double harmonic = DiversityModel.harmonic(totalTypes);
         double totalDiversity = 0;
-        int totalSampleSize = 0;
-        for (int rank = 1; rank <= totalTypes; rank++) {
-            double sampleSize = maxNounFreq * (1.0 / rank);
-            totalSampleSize += sampleSize;
-        }
         double totalExpDiversity = 0;
+        long draws = 0;
 
-        for (int rank = 1; rank <= totalTypes; rank++) {
-            double nounProb = 1 / (rank * harmonic);
-
-            // Calculate the predicted diversity of the sample
-            double expectedDiversity;
-            if (useSimpleModel) {
-                double exclusiveA = Math.pow(1 - bias, nounProb * totalSampleSize);
-                double exclusiveThe = Math.pow(bias, nounProb * totalSampleSize);
-                expectedDiversity = 1 - (exclusiveA + exclusiveThe);
-            }
-            else {
-                double nonNounProb = 1 - nounProb;
-                double pow = Math.pow(nonNounProb, totalSampleSize);
-                double probSum = Math.pow((aBias * nounProb + nonNounProb), totalSampleSize) - pow;
-                probSum += Math.pow((bias * nounProb + nonNounProb), totalSampleSize) - pow;
-                expectedDiversity = (1 - pow) - probSum;
+        double[] detProbs = {1 - bias, bias};
+        double[] expected = new double[Math.min(DiversityModel.batchSize, totalTypes)];
+        double[] work = new double[expected.length];
+        int[] diversity = new int[expected.length];
+        for (int from = 1; from <= totalTypes; from += expected.length) {
+            int length = Math.min(expected.length, totalTypes - from + 1);
+            // Calculate the predicted diversity of the sample for the whole batch of ranks
+            long start = predictStage.start();
+            DiversityModel.expectedDiversity(from, length, harmonic, totalSampleSize, detProbs, useSimpleModel,
+                    expected, work);
+            predictStage.stop(start);
+
+            draws += sampleBatch(from, length, maxNounFreq, bias, samplingMode, random, diversity);
+
+            for (int i = 0; i < length; i++) {
+                totalDiversity += diversity[i];
+                totalExpDiversity += expected[i];
+                if (rawSink != null)
+                    rawSink.rank((int) Math.round(maxNounFreq * (1.0 / (from + i))), expected[i], diversity[i]);
             }
+        }
+        ranksCounter.add(totalTypes);
+        drawsCounter.add(draws);
+
+        double predicted = (totalExpDiversity / totalTypes) * 100;
+        double empirical = (totalDiversity / totalTypes) * 100;
+        return new Pair<>(predicted, empirical);
+    }
+
+    /**
+     * The predicted diversity of a simulated sample. It does not depend on the random draws, so it is the same in
+     * every round and only needs to be computed once per number of types.
+     *
+     * @param totalTypes The number of total noun types
+     * @param totalSampleSize The total number of determiner-noun pairs
+     * @param bias The determiner bias
+     * @param useSimpleModel Whether to use a simpler model (set to {@code false} to use the model from Yang (2013)
+     * @return The predicted diversity, as in {@link #simulate}
+     */
+    static double predicted(int totalTypes, double totalSampleSize, double bias, boolean useSimpleModel) {
+        double[] detProbs = {1 - bias, bias};
+        long start = predictStage.start();
+        double predicted = DiversityModel.predictedDiversity(totalTypes, totalSampleSize, detProbs, useSimpleModel,
+                new double[DiversityModel.batchSize], new double[DiversityModel.batchSize]);
+        predictStage.stop(start);
+        return predicted;
+    }
+
+    /**
+     * Samples the empirical diversity of one round of the simulation, without the predicted diversity (see
+     * {@link #predicted(int, double, double, boolean)}).
+     *
+     * @param totalTypes The number of total noun types
+     * @param maxNounFreq The frequency of the most frequent noun
+     * @param bias The determiner bias
+     * @param samplingMode How to sample the empirical diversity of each noun
+     * @param random The random stream of this round
+     * @return The empirical diversity, as in {@link #simulate}
+     */
+    static double sample(int totalTypes, int maxNounFreq, double bias, SamplingMode samplingMode,
+                         SplittableRng random) {
+        double totalDiversity = 0;
+        long draws = 0;
+        int[] diversity = new int[Math.min(DiversityModel.batchSize, totalTypes)];
+        for (int from = 1; from <= totalTypes; from += diversity.length) {
+            int length = Math.min(diversity.length, totalTypes - from + 1);
+            draws += sampleBatch(from, length, maxNounFreq, bias, samplingMode, random, diversity);
+            for (int i = 0; i < length; i++)
+                totalDiversity += diversity[i];
+        }
+        ranksCounter.add(totalTypes);
+        drawsCounter.add(draws);
+        return (totalDiversity / totalTypes) * 100;
+    }
 
-            // Calculate the (simulated) empirical diversity of the sample
+    /**
+     * Samples the (simulated) empirical diversity of a batch of consecutive ranks.
+     *
+     * @param diversity Receives the empirical diversity (0 or 1) of each rank, starting at index 0
+     * @return The number of random draws
+     */
+    private static long sampleBatch(int fromRank, int length, int maxNounFreq, double bias,
+                                    SamplingMode samplingMode, SplittableRng random, int[] diversity) {
+        long start = sampleStage.start();
+        long draws = 0;
+        for (int i = 0; i < length; i++) {
+            int rank = fromRank + i;
             int empiricalDiversity = 0;
             int nounFreq = (int) Math.round(maxNounFreq * (1.0 / rank));
             // If there is only one noun the diversity is always 0
-            if (nounFreq != 1) {
+            if (nounFreq > 1 && samplingMode == SamplingMode.CLOSED_FORM) {
+                draws++;
+                if (random.nextDouble() < bothDeterminersProb(nounFreq, bias))
+                    empiricalDiversity = 1;
+            }
+            else if (nounFreq != 1) {
                 int theDraws = 0, aDraws = 0;
-                for (int i = 0; i < nounFreq; i++) {
+                for (int j = 0; j < nounFreq; j++) {
+                    draws++;
                     // Keep sampling (with bias) until we select both determiners
                     if (random.nextFloat() > bias) {
                         aDraws++;
@@ -129,15 +224,47 @@ public class Simulation {
                     }
                 }
             }
-            totalDiversity += empiricalDiversity;
-            totalExpDiversity += expectedDiversity;
+            diversity[i] = empiricalDiversity;
+        }
+        sampleStage.stop(start);
+        return draws;
+    }
 
-            if (addRawNumbers)
-                rawNumbers.add(nounFreq + "\t" + expectedDiversity + "\t" + empiricalDiversity);
+    /**
+     * The total number of determiner-noun pairs in a sample as computed by the reference implementation: the
+     * fractional frequencies {@code maxNounFreq / rank} of all the ranks added up and truncated one by one, in
+     * O(totalTypes) time.
+     */
+    static int referenceSampleSize(int totalTypes, int maxNounFreq) {
+        int totalSampleSize = 0;
+        for (int rank = 1; rank <= totalTypes; rank++) {
+            double sampleSize = maxNounFreq * (1.0 / rank);
+            totalSampleSize += sampleSize;
         }
+        return totalSampleSize;
+    }
 
-        double predicted = (totalExpDiversity / totalTypes) * 100;
-        double empirical = (totalDiversity / totalTypes) * 100;
-        return new Pair<>(predicted, empirical);
+    /**
+     * The total number of determiner-noun pairs in a sample: the sum of {@code floor(maxNounFreq / rank)} over all
+     * the ranks. Computed in O(sqrt(maxNounFreq)) time by summing the ranks with the same quotient together.
+     */
+    static long totalSampleSize(int totalTypes, int maxNounFreq) {
+        long total = 0;
+        int limit = Math.min(totalTypes, maxNounFreq);
+        for (int rank = 1; rank <= limit; ) {
+            int quotient = maxNounFreq / rank;
+            int lastRank = Math.min(limit, maxNounFreq / quotient);
+            total += (long) quotient * (lastRank - rank + 1);
+            rank = lastRank + 1;
+        }
+        return total;
+    }
+
+    /**
+     * The probability that {@code nounFreq} tokens of a noun include both determiners, i.e.
+     * 1 - bias^n - (1 - bias)^n.
+     */
+    static double bothDeterminersProb(int nounFreq, double bias) {
+        return -Math.expm1(nounFreq * Math.log(bias)) - Math.pow(1 - bias, nounFreq);
     }
 }
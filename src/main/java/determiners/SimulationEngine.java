@@ -0,0 +1,189 @@
+package determiners;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the rounds of {@link Simulation} for a range of type counts on a pool of worker threads.
+ *
+ * Each round draws from its own {@link SplittableRng} stream, derived from the master seed, the number of types
+ * and the round number. Rounds are grouped into tasks of a fixed size, and each task keeps its own
+ * {@link RunningStats}. The partial results are merged in task order, so for a given seed the output is
+ * identical no matter how many threads are used. The predicted diversity does not depend on the round, so it is
+ * computed by a task of its own, once per number of types, and the rounds only sample the empirical diversity.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class SimulationEngine {
+    /** How many rounds a single task runs (fixed so that the merge order does not depend on the thread count) */
+    private static final int roundsPerTask = 16;
+
+    private static final Metrics.Stage simulateStage = Metrics.stage("simulate");
+    private static final Metrics.Counter roundsCounter = Metrics.counter("simulate.rounds");
+
+    private final int numThreads;
+    private final SplittableRng master;
+
+    /** Receives the results of each number of types, in order, as soon as they are complete */
+    public interface StepHandler {
+        void step(StepResult result) throws IOException;
+    }
+
+    /** The predicted diversity and the mean/std. err of the empirical diversity for a single number of types */
+    public static class StepResult {
+        public final int totalTypes;
+        /** The predicted diversity, which is the same in every round */
+        public final double predicted;
+        public final RunningStats empirical;
+
+        StepResult(int totalTypes, double predicted, RunningStats empirical) {
+            this.totalTypes = totalTypes;
+            this.predicted = predicted;
+            this.empirical = empirical;
+        }
+    }
+
+    /** The tasks of a single number of types that are still running */
+    private static class PendingStep {
+        final int totalTypes;
+        final Future<Double> predicted;
+        final List<Future<RunningStats>> rounds = new ArrayList<>();
+
+        PendingStep(int totalTypes, Future<Double> predicted) {
+            this.totalTypes = totalTypes;
+            this.predicted = predicted;
+        }
+    }
+
+    /**
+     * @param numThreads The number of worker threads
+     * @param seed The master seed; all the random streams of the simulation are derived from it
+     */
+    public SimulationEngine(int numThreads, long seed) {
+        this.numThreads = numThreads;
+        this.master = new SplittableRng(seed);
+    }
+
+    /**
+     * Simulates {@code maxRounds} rounds for each of the given numbers of types.
+     *
+     * @param typeSteps The numbers of noun types to simulate
+     * @param maxRounds The number of rounds per number of types
+     * @param multiplier Multiplied to the number of types to get the frequency of the most frequent noun
+     * @param bias The determiner bias
+     * @param useSimpleModel Whether to use the simpler model for the predicted diversity
+     * @param samplingMode How to sample the empirical diversity of each noun
+     * @param incremental Whether to compute the total sample size exactly (see {@link Simulation#totalSampleSize}),
+     *                    instead of as the reference implementation does (see
+     *                    {@link Simulation#referenceSampleSize})
+     * @param handler Receives one result per entry of {@code typeSteps}, in the same order
+     */
+    public void run(int[] typeSteps, int maxRounds, double multiplier, double bias, boolean useSimpleModel,
+                    SamplingMode samplingMode, boolean incremental, StepHandler handler) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        // Keep a bounded number of steps in flight so that very long sweeps do not queue millions of tasks
+        int maxStepsInFlight = 2 * numThreads;
+        Deque<PendingStep> inFlight = new ArrayDeque<>();
+        try {
+            for (int totalTypes : typeSteps) {
+                int maxNounFreq = (int) Math.round(totalTypes * multiplier);
+                double totalSampleSize = incremental ? Simulation.totalSampleSize(totalTypes, maxNounFreq)
+                        : Simulation.referenceSampleSize(totalTypes, maxNounFreq);
+                PendingStep step = new PendingStep(totalTypes, executor.submit(
+                        new PredictTask(totalTypes, totalSampleSize, bias, useSimpleModel)));
+                for (int from = 0; from < maxRounds; from += roundsPerTask) {
+                    int to = Math.min(from + roundsPerTask, maxRounds);
+                    step.rounds.add(executor.submit(new RoundsTask(totalTypes, maxNounFreq, bias, samplingMode,
+                            from, to)));
+                }
+                inFlight.addLast(step);
+                if (inFlight.size() > maxStepsInFlight)
+                    handler.step(collect(inFlight.removeFirst()));
+            }
+            while (!inFlight.isEmpty())
+                handler.step(collect(inFlight.removeFirst()));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private StepResult collect(PendingStep step) {
+        try {
+            RunningStats empirical = new RunningStats();
+            for (Future<RunningStats> task : step.rounds)
+                empirical.merge(task.get());
+            return new StepResult(step.totalTypes, step.predicted.get(), empirical);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /** Computes the predicted diversity of a single number of types */
+    private static class PredictTask implements Callable<Double> {
+        private final int totalTypes;
+        private final double totalSampleSize, bias;
+        private final boolean useSimpleModel;
+
+        PredictTask(int totalTypes, double totalSampleSize, double bias, boolean useSimpleModel) {
+            this.totalTypes = totalTypes;
+            this.totalSampleSize = totalSampleSize;
+            this.bias = bias;
+            this.useSimpleModel = useSimpleModel;
+        }
+
+        @Override
+        public Double call() {
+            return Simulation.predicted(totalTypes, totalSampleSize, bias, useSimpleModel);
+        }
+    }
+
+    /** Samples the empirical diversity of rounds {@code [from, to)} for a single number of types */
+    private class RoundsTask implements Callable<RunningStats> {
+        private final int totalTypes, maxNounFreq, from, to;
+        private final double bias;
+        private final SamplingMode samplingMode;
+
+        RoundsTask(int totalTypes, int maxNounFreq, double bias, SamplingMode samplingMode, int from, int to) {
+            this.totalTypes = totalTypes;
+            this.maxNounFreq = maxNounFreq;
+            this.bias = bias;
+            this.samplingMode = samplingMode;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public RunningStats call() {
+            Metrics.Span span = simulateStage.span();
+            try {
+                return simulateRounds();
+            }
+            finally {
+                span.stop();
+            }
+        }
+
+        private RunningStats simulateRounds() {
+            RunningStats partial = new RunningStats();
+            SplittableRng typesRng = master.split(totalTypes);
+            for (int round = from; round < to; round++)
+                partial.add(Simulation.sample(totalTypes, maxNounFreq, bias, samplingMode, typesRng.split(round)));
+            roundsCounter.add(to - from);
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package determiners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The diversity of a window of consecutive determiner-noun pairs, updated incrementally as pairs enter and leave
+ * the window, so that a whole developmental trajectory can be computed in one pass over a corpus (see
+ * {@link #trajectory(String, DetNounTable, int, int, double, double[])}).
+ *
+ * Adding or removing a pair is O(1): the window keeps the count of every determiner for every noun, the number of
+ * different determiners of every noun, and the number of noun types and diverse noun types. The predicted
+ * diversity takes O(types) time, but once the window is full it only depends on the number of noun types (and,
+ * with the relative frequencies of the window, on the count of every determiner), so it is computed once per
+ * distinct number of types (and determiner counts) and reused.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class SlidingWindow {
+    private final int numDets;
+    /** counts[noun * numDets + det] */
+    private final int[] counts;
+    /** The number of different determiners of every noun */
+    private final int[] nounDets;
+    private final int[] detTotals;
+    private int size, types, diverse;
+
+    /**
+     * @param numDets The number of determiners
+     * @param numNouns The number of noun types (noun ids are below this)
+     */
+    public SlidingWindow(int numDets, int numNouns) {
+        this.numDets = numDets;
+        this.counts = new int[numDets * numNouns];
+        this.nounDets = new int[numNouns];
+        this.detTotals = new int[numDets];
+    }
+
+    public void add(int det, int noun) {
+        if (counts[noun * numDets + det]++ == 0) {
+            int dets = nounDets[noun]++;
+            if (dets == 0) types++;
+            else if (dets == 1) diverse++;
+        }
+        detTotals[det]++;
+        size++;
+    }
+
+    public void remove(int det, int noun) {
+        if (--counts[noun * numDets + det] == 0) {
+            int dets = --nounDets[noun];
+            if (dets == 0) types--;
+            else if (dets == 1) diverse--;
+        }
+        detTotals[det]--;
+        size--;
+    }
+
+    /** @return The number of pairs in the window */
+    public int size() {
+        return size;
+    }
+
+    public int numNounTypes() {
+        return types;
+    }
+
+    /** @return The number of noun types that appear with at least two different determiners */
+    public int diverseTypes() {
+        return diverse;
+    }
+
+    public int detCount(int det) {
+        return detTotals[det];
+    }
+
+    /**
+     * Slides a window of {@code windowSize} pairs over the pairs of a corpus (in corpus order), every
+     * {@code stride} pairs.
+     *
+     * @param child The name of the child
+     * @param table The determiner-noun pairs of the corpus
+     * @param windowSize The number of pairs in a window
+     * @param stride The number of pairs between the starts of two windows
+     * @param exponent The Zipf exponent of the nouns used for the predicted diversity (1 in Yang (2013))
+     * @param detProbs The probability of each determiner used for the predicted diversity, or {@code null} to use
+     *                 the relative frequencies of the determiners in each window (which costs O(types) for every
+     *                 window with a new combination of noun types and determiner counts, i.e. most windows when
+     *                 there are more than two determiners)
+     * @return The diversity of every window (none if the corpus is smaller than a window)
+     */
+    public static List<WindowResult> trajectory(String child, DetNounTable table, int windowSize, int stride,
+                                                double exponent, double[] detProbs) {
+        int numDets = table.determiners().length;
+        SlidingWindow window = new SlidingWindow(numDets, table.numNounTypes());
+        int[] dets = table.tokenDets(), nouns = table.tokenNouns();
+        double[] expected = new double[DiversityModel.batchSize], work = new double[DiversityModel.batchSize];
+        // predictedByTypes[types], for fixed determiner probabilities (NaN until computed)
+        double[] predictedByTypes = new double[table.numNounTypes() + 1];
+        Arrays.fill(predictedByTypes, Double.NaN);
+        // The predictions for the relative frequencies of the window, by number of types and determiner counts
+        Map<String, Double> predictedByCounts = new HashMap<>();
+        double[] windowProbs = new double[numDets];
+
+        List<WindowResult> windows = new ArrayList<>();
+        for (int end = 0; end < table.size(); end++) {
+            window.add(dets[end], nouns[end]);
+            int start = end + 1 - windowSize;
+            if (start > 0) window.remove(dets[start - 1], nouns[start - 1]);
+            if (start < 0 || start % stride != 0) continue;
+
+            int types = window.numNounTypes();
+            double predicted;
+            if (detProbs != null) {
+                predicted = predictedByTypes[types];
+                if (Double.isNaN(predicted)) {
+                    predicted = DiversityModel.predictedDiversity(types, windowSize, exponent, detProbs, false,
+                            expected, work);
+                    predictedByTypes[types] = predicted;
+                }
+            }
+            else {
+                StringBuilder counts = new StringBuilder().append(types);
+                for (int d = 0; d < numDets; d++)
+                    counts.append('\t').append(window.detCount(d));
+                String key = counts.toString();
+                Double cached = predictedByCounts.get(key);
+                if (cached == null) {
+                    for (int d = 0; d < numDets; d++)
+                        windowProbs[d] = (double) window.detCount(d) / windowSize;
+                    cached = DiversityModel.predictedDiversity(types, windowSize, exponent, windowProbs, false,
+                            expected, work);
+                    predictedByCounts.put(key, cached);
+                }
+                predicted = cached;
+            }
+            double empirical = ((double) window.diverseTypes() / types) * 100;
+            windows.add(new WindowResult(child, start, end + 1, types, empirical, predicted));
+        }
+        return windows;
+    }
+}
@@ -0,0 +1,62 @@
+package determiners;
+
+/**
+ * A small, seedable and splittable pseudo-random number generator. It implements the SplitMix64 algorithm
+ * (the one behind {@code java.util.SplittableRandom}, which is not available on Java 1.7).
+ *
+ * A generator derived with {@link #split(long)} depends only on its parent's seed and the given index, so
+ * independent tasks can each get their own stream and still produce the same numbers no matter which thread
+ * runs them, or in which order.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public final class SplittableRng {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+
+    public SplittableRng(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Derives a new generator for the stream with the given index. Does not advance this generator.
+     *
+     * @param index The index of the stream (e.g. the round or task number)
+     * @return An independent generator determined by this generator's seed and {@code index}
+     */
+    public SplittableRng split(long index) {
+        return new SplittableRng(mix64(seed ^ mix64((index + 1) * GOLDEN_GAMMA)));
+    }
+
+    public long nextLong() {
+        seed += GOLDEN_GAMMA;
+        return mix64(seed);
+    }
+
+    /** @return A uniformly distributed value in [0, 1) */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /** @return A uniformly distributed value in [0, 1) */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /** @return A uniformly distributed value in [0, bound) */
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0) return r & m;
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33)) ;
+        return r;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
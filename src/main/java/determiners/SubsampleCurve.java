@@ -0,0 +1,219 @@
+package determiners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The empirical and predicted diversity of a corpus as a function of the sample size, so that children can be
+ * compared at matched sample sizes. The determiner-noun pairs are put in a random order (Fisher-Yates) and the
+ * diversity of every prefix ending at a checkpoint (e.g. every 1% of the pairs) is recorded, so each ordering gives
+ * a whole curve of nested subsamples in one pass. The curves are averaged over many orderings.
+ *
+ * The diversity is updated incrementally as pairs arrive: every noun keeps the bitmask of its determiners, and the
+ * number of noun types and diverse noun types are updated when a mask changes. As in {@link PermutationTest},
+ * orderings are split into tasks of a fixed size that run in parallel on a pool owned by the caller, each with its
+ * own {@link SplittableRng} stream, so the result for a given seed does not depend on the number of threads.
+ *
+ * The predicted diversity only depends on the size and the number of noun types of a subsample, so it is evaluated
+ * once per distinct (size, types) pair after all the orderings are done, and averaged with the weights of the
+ * orderings.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class SubsampleCurve {
+    /** The number of orderings run by a single task */
+    private static final int orderingsPerTask = 16;
+
+    private static final Metrics.Stage subsampleStage = Metrics.stage("subsample");
+    private static final Metrics.Counter orderingsCounter = Metrics.counter("subsample.orderings");
+    private static final Metrics.Counter drawsCounter = Metrics.counter("subsample.rng-draws");
+
+    private final DetNounTable table;
+    private final ExecutorService executor;
+    private final SplittableRng master;
+
+    /**
+     * @param table The determiner-noun pairs of the corpus
+     * @param executor The pool that runs the ordering tasks; it is not shut down by the curve
+     * @param seed The master seed of the orderings
+     */
+    public SubsampleCurve(DetNounTable table, ExecutorService executor, long seed) {
+        this.table = table;
+        this.executor = executor;
+        this.master = new SplittableRng(seed);
+    }
+
+    /**
+     * @param child The name of the child
+     * @param numOrderings The number of random orderings of the pairs
+     * @param numCheckpoints The number of subsample sizes, evenly spaced up to the size of the corpus (e.g. 100 for
+     *                       every 1% of the pairs)
+     * @param exponent The Zipf exponent of the nouns used for the predicted diversity (1 in Yang (2013))
+     * @param detProbs The probability of each determiner used for the predicted diversity, or {@code null} to use
+     *                 their relative frequencies in the corpus (which are also their expected frequencies in every
+     *                 random subsample)
+     * @return The diversity at every subsample size (none if the corpus is empty)
+     */
+    public List<CurvePoint> run(String child, int numOrderings, int numCheckpoints, double exponent,
+                                double[] detProbs) {
+        int[] sizes = checkpoints(table.size(), numCheckpoints);
+        if (sizes.length == 0 || numOrderings <= 0) return new ArrayList<>();
+        if (detProbs == null) {
+            detProbs = new double[table.determiners().length];
+            for (int det = 0; det < detProbs.length; det++)
+                detProbs[det] = (double) table.detCount(det) / table.size();
+        }
+
+        // types[ordering][checkpoint] and diverse[ordering][checkpoint]
+        int[][] types = new int[numOrderings][], diverse = new int[numOrderings][];
+        List<Future<Partial>> futures = new ArrayList<>();
+        try {
+            int task = 0;
+            for (int from = 0; from < numOrderings; from += orderingsPerTask) {
+                int count = Math.min(orderingsPerTask, numOrderings - from);
+                futures.add(executor.submit(new OrderingTask(master.split(task++), count, sizes)));
+            }
+            int ordering = 0;
+            for (Future<Partial> future : futures) {
+                Partial partial = future.get();
+                for (int i = 0; i < partial.types.length; i++, ordering++) {
+                    types[ordering] = partial.types[i];
+                    diverse[ordering] = partial.diverse[i];
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            for (Future<Partial> future : futures)
+                future.cancel(true);
+        }
+
+        double[] expected = new double[DiversityModel.batchSize], work = new double[DiversityModel.batchSize];
+        int[] checkpointTypes = new int[numOrderings];
+        List<CurvePoint> curve = new ArrayList<>();
+        for (int c = 0; c < sizes.length; c++) {
+            RunningStats empirical = new RunningStats(), nounTypes = new RunningStats();
+            for (int ordering = 0; ordering < numOrderings; ordering++) {
+                int numTypes = types[ordering][c];
+                checkpointTypes[ordering] = numTypes;
+                nounTypes.add(numTypes);
+                empirical.add(((double) diverse[ordering][c] / numTypes) * 100);
+            }
+            // One evaluation of the model per distinct number of noun types at this size
+            Arrays.sort(checkpointTypes);
+            double predicted = 0;
+            for (int start = 0; start < numOrderings; ) {
+                int end = start;
+                while (end < numOrderings && checkpointTypes[end] == checkpointTypes[start]) end++;
+                predicted += (end - start) * DiversityModel.predictedDiversity(checkpointTypes[start], sizes[c],
+                        exponent, detProbs, false, expected, work);
+                start = end;
+            }
+            curve.add(new CurvePoint(child, sizes[c], nounTypes.mean(), empirical.mean(), empirical.stdErr(),
+                    predicted / numOrderings));
+        }
+        return curve;
+    }
+
+    /**
+     * @return The distinct subsample sizes {@code ceil(k * size / numCheckpoints)} for {@code k = 1..numCheckpoints},
+     * in increasing order (the last one is the whole corpus)
+     */
+    static int[] checkpoints(int size, int numCheckpoints) {
+        if (size == 0 || numCheckpoints <= 0) return new int[0];
+        int[] sizes = new int[numCheckpoints];
+        int count = 0;
+        for (int k = 1; k <= numCheckpoints; k++) {
+            int checkpoint = (int) ((k * (long) size + numCheckpoints - 1) / numCheckpoints);
+            if (count == 0 || checkpoint != sizes[count - 1]) sizes[count++] = checkpoint;
+        }
+        return Arrays.copyOf(sizes, count);
+    }
+
+    private static class Partial {
+        /** The number of noun types and diverse noun types at every checkpoint of every ordering of the task */
+        final int[][] types, diverse;
+
+        Partial(int count) {
+            types = new int[count][];
+            diverse = new int[count][];
+        }
+    }
+
+    private class OrderingTask implements Callable<Partial> {
+        private final SplittableRng random;
+        private final int count;
+        private final int[] sizes;
+
+        OrderingTask(SplittableRng random, int count, int[] sizes) {
+            this.random = random;
+            this.count = count;
+            this.sizes = sizes;
+        }
+
+        @Override
+        public Partial call() {
+            Metrics.Span span = subsampleStage.span();
+            try {
+                return order();
+            }
+            finally {
+                span.stop();
+            }
+        }
+
+        private Partial order() {
+            int size = table.size();
+            int[] dets = Arrays.copyOf(table.tokenDets(), size);
+            int[] nouns = Arrays.copyOf(table.tokenNouns(), size);
+            int[] detMasks = new int[table.numNounTypes()];
+            Partial partial = new Partial(count);
+            for (int o = 0; o < count; o++) {
+                // Shuffling the previous ordering again gives another uniformly random ordering
+                for (int i = size - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int tmp = dets[i];
+                    dets[i] = dets[j];
+                    dets[j] = tmp;
+                    tmp = nouns[i];
+                    nouns[i] = nouns[j];
+                    nouns[j] = tmp;
+                }
+                int[] types = new int[sizes.length], diverse = new int[sizes.length];
+                Arrays.fill(detMasks, 0);
+                int numTypes = 0, numDiverse = 0, checkpoint = 0;
+                for (int i = 0; i < size; i++) {
+                    int noun = nouns[i];
+                    int mask = detMasks[noun];
+                    int newMask = mask | (1 << dets[i]);
+                    if (newMask != mask) {
+                        if (mask == 0) numTypes++;
+                        else if (Integer.bitCount(mask) == 1) numDiverse++;
+                        detMasks[noun] = newMask;
+                    }
+                    if (i + 1 == sizes[checkpoint]) {
+                        types[checkpoint] = numTypes;
+                        diverse[checkpoint] = numDiverse;
+                        checkpoint++;
+                    }
+                }
+                partial.types[o] = types;
+                partial.diverse[o] = diverse;
+            }
+            orderingsCounter.add(count);
+            drawsCounter.add((long) count * Math.max(size - 1, 0));
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package determiners;
+
+import java.util.Arrays;
+
+/**
+ * The numbers of noun types simulated by {@link Simulation}.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class SweepGrid {
+    private SweepGrid() {}
+
+    /**
+     * @return {@code start, start + increment, ...} up to (and including, if it is on the grid) {@code max}
+     */
+    public static int[] linear(int start, int max, int increment) {
+        if (max < start) return new int[0];
+        int[] steps = new int[(max - start) / increment + 1];
+        for (int i = 0; i < steps.length; i++)
+            steps[i] = start + i * increment;
+        return steps;
+    }
+
+    /**
+     * @param min The smallest number of types
+     * @param max The largest number of types
+     * @param points The (maximum) number of points; points that round to the same number of types are merged
+     * @return Numbers of types evenly spaced on a log scale between {@code min} and {@code max} (inclusive)
+     */
+    public static int[] logSpaced(int min, int max, int points) {
+        if (points < 2 || max <= min) return new int[]{min};
+        int[] steps = new int[points];
+        int size = 0;
+        double ratio = Math.log((double) max / min) / (points - 1);
+        for (int i = 0; i < points; i++) {
+            int step = (i == points - 1) ? max : (int) Math.round(min * Math.exp(ratio * i));
+            if (size == 0 || step > steps[size - 1])
+                steps[size++] = step;
+        }
+        return Arrays.copyOf(steps, size);
+    }
+}
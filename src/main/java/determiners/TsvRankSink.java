@@ -0,0 +1,49 @@
+package determiners;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the raw per-rank results as tab-separated rows (the {@code sim-raw@XX.csv} format) through a buffered
+ * channel.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class TsvRankSink implements RankSink {
+    static final String HEADER = "nounFreq\texpectedDiversity\tempiricalDiversity";
+
+    private final Writer out;
+
+    public TsvRankSink(String file) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                StandardCharsets.UTF_8), 1 << 16);
+        out.write(HEADER);
+        out.write(System.lineSeparator());
+    }
+
+    @Override
+    public void rank(int nounFreq, double expectedDiversity, int empiricalDiversity) throws IOException {
+        out.write(nounFreq + "\t" + expectedDiversity + "\t" + empiricalDiversity);
+        out.write(System.lineSeparator());
+    }
+
+    @Override
+    public void summary(double predicted, double empirical) throws IOException {
+        out.write(System.lineSeparator() + "Sim:\t" + predicted + "\t" + empirical);
+        out.write(System.lineSeparator());
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
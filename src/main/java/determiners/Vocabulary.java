@@ -0,0 +1,106 @@
+package determiners;
+
+import java.util.Arrays;
+
+/**
+ * Interns strings into dense integer ids (0, 1, 2, ...) in order of first appearance. Strings can be looked up
+ * directly from a slice of a character buffer, so interning a string that has already been seen does not
+ * allocate.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class Vocabulary {
+    private String[] words = new String[1024];
+    private int[] hashes = new int[1024];
+    /** Open-addressing table of {@code id + 1} (0 marks an empty slot) */
+    private int[] slots = new int[2048];
+    private int size;
+
+    /** @return The id of the string, adding it to the vocabulary if it is new */
+    public int id(char[] chars, int start, int length) {
+        int hash = hash(chars, start, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                int id = add(new String(chars, start, length), hash);
+                slots[slot] = id + 1;
+                if (2 * size > slots.length) rehash();
+                return id;
+            }
+            if (hashes[entry - 1] == hash && equals(words[entry - 1], chars, start, length))
+                return entry - 1;
+        }
+    }
+
+    /** @return The id of the string, adding it to the vocabulary if it is new */
+    public int id(String word) {
+        int id = lookup(word);
+        if (id != -1) return id;
+        return id(word.toCharArray(), 0, word.length());
+    }
+
+    /** @return The id of the string, or -1 if it is not in the vocabulary */
+    public int lookup(String word) {
+        int hash = hash(word);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) return -1;
+            if (hashes[entry - 1] == hash && words[entry - 1].equals(word))
+                return entry - 1;
+        }
+    }
+
+    public String word(int id) {
+        return words[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String word, int hash) {
+        if (size == words.length) {
+            words = Arrays.copyOf(words, 2 * size);
+            hashes = Arrays.copyOf(hashes, 2 * size);
+        }
+        words[size] = word;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        int[] grown = new int[2 * slots.length];
+        int mask = grown.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (grown[slot] != 0) slot = (slot + 1) & mask;
+            grown[slot] = id + 1;
+        }
+        slots = grown;
+    }
+
+    private static int hash(char[] chars, int start, int length) {
+        int h = 0;
+        for (int i = start; i < start + length; i++)
+            h = 31 * h + chars[i];
+        return spread(h);
+    }
+
+    private static int hash(String word) {
+        return spread(word.hashCode());
+    }
+
+    private static int spread(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(String word, char[] chars, int start, int length) {
+        if (word.length() != length) return false;
+        for (int i = 0; i < length; i++)
+            if (word.charAt(i) != chars[start + i]) return false;
+        return true;
+    }
+}
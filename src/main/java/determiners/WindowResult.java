@@ -0,0 +1,37 @@
+package determiners;
+
+import edu.illinois.cs.cogcomp.core.utilities.StringUtils;
+
+/**
+ * The diversity of a single window of consecutive determiner-noun pairs of a child (see {@link SlidingWindow}).
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class WindowResult {
+    public static final String HEADER = "child\tfrom\tto\t#noun-types\tempirical\tpredicted";
+
+    public final String child;
+    /** The index of the first pair of the window (in corpus order) */
+    public final int from;
+    /** The index after the last pair of the window */
+    public final int to;
+    public final int nounTypes;
+    public final double empirical;
+    public final double predicted;
+
+    public WindowResult(String child, int from, int to, int nounTypes, double empirical, double predicted) {
+        this.child = child;
+        this.from = from;
+        this.to = to;
+        this.nounTypes = nounTypes;
+        this.empirical = empirical;
+        this.predicted = predicted;
+    }
+
+    /** @return The result as a tab-separated row (see {@link #HEADER}) */
+    public String toRow() {
+        return child + "\t" + from + "\t" + to + "\t" + nounTypes + "\t" +
+                StringUtils.getFormattedTwoDecimal(empirical) + "\t" +
+                StringUtils.getFormattedTwoDecimal(predicted);
+    }
+}
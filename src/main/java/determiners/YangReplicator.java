@@ -1,152 +1,257 @@
 package determiners;
 
-import edu.illinois.cs.cogcomp.core.datastructures.Pair;
-import edu.illinois.cs.cogcomp.core.io.LineIO;
-import edu.illinois.cs.cogcomp.core.stats.Counter;
-import edu.illinois.cs.cogcomp.core.utilities.StringUtils;
+import determiners.readers.CorpusCache;
+import determiners.readers.TaggedCorpusReader;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Replication of the experiments of Yang (2013) and the results of the simulation experiments of
  * Silvey and Christodoulopoulos (2016).
  *
  * The preprocessed data (cleaned and tagged) need to reside in a single folder with names: {@code <child>.txt}
+ * (by default {@code data/tagged}, or the folder given as the first argument). All the children in the folder are
+ * processed in parallel (see {@link BatchRunner}) and the results are written to {@link #outFile}.
+ *
+ * Any set of {@link #determiners} can be analysed: a noun is diverse if it appears with at least two different
+ * determiners. With more than two determiners, every pair of them is also analysed (from the same pass over the
+ * data) and written to {@link #pairsOutFile}.
+ *
+ * With {@link #bootstrap} enabled, the determiner-noun pairs of every child are also resampled with replacement
+ * (see {@link BootstrapTest}) and the confidence intervals of the empirical and predicted diversity are written to
+ * {@link #bootstrapOutFile}.
+ *
+ * With {@link #slidingWindow} enabled, the developmental trajectory of every child is computed by sliding a window
+ * of {@link #windowSize} determiner-noun pairs over the corpus (see {@link SlidingWindow}) and written to
+ * {@link #windowsOutFile}.
+ *
+ * With {@link #subsampleCurve} enabled, the diversity of every child is also computed for {@link #numCheckpoints}
+ * nested subsample sizes, averaged over {@link #numOrderings} random orderings of the pairs (see
+ * {@link SubsampleCurve}), and written to {@link #curvesOutFile}.
+ *
+ * With {@link #fitZipf} enabled, the determiner probabilities and the Zipf exponent of the nouns are fitted to every
+ * child by maximum likelihood (see {@link ZipfFit}), all the predicted diversities (of the child, of every pair of
+ * determiners, of the bootstrap replicates, windows and subsamples) use the fitted values, and the fits are written to
+ * {@link #fitsOutFile}.
  *
  * @author Christos Christodoulopoulos
  */
 public class YangReplicator {
+    /** The (lemmas of the) determiners to analyse */
+    private static final String[] determiners = TaggedCorpusReader.DETERMINERS;
+    /**
+     * Whether to use the empirical determiner frequencies. Otherwise "the" is twice as likely as "a", as in
+     * Yang (2013); this only applies to the default determiners, any other set always uses the frequencies.
+     */
     private static final boolean useZipfianDetBias = false;
+    /** The folder with the {@code <child>.txt} files, unless one is given as an argument */
+    private static final String dataFolder = "data/tagged";
+    /** Where the (tab-separated) results are written */
+    private static final String outFile = "yang-results.csv";
+    /** Where the (tab-separated) results of every pair of determiners are written */
+    private static final String pairsOutFile = "yang-pairs.csv";
+    /** The number of files processed at the same time, and the number of threads of the random reassignments */
+    private static final int numThreads = Runtime.getRuntime().availableProcessors();
+    /** The number of random reassignments of the determiners used for the simulated baseline */
+    private static final int numPermutations = 10000;
+    /** The master seed of the random reassignments */
+    private static final long seed = 42;
+    /** Whether to load the corpora from (and keep them in) a binary cache instead of re-reading the text files */
+    private static final boolean useCache = true;
+    /** Where the binary caches of the corpora are kept */
+    private static final String cacheFolder = "data/cache";
+    /** Whether to compute bootstrap confidence intervals */
+    private static final boolean bootstrap = false;
+    /** The number of bootstrap replicates per child */
+    private static final int numBootstrapReplicates = 10000;
+    /** The confidence level of the bootstrap intervals */
+    private static final double bootstrapConfidence = 0.95;
+    /** Where the (tab-separated) bootstrap intervals are written */
+    private static final String bootstrapOutFile = "yang-bootstrap.csv";
+    /**
+     * Whether to fit the determiner probabilities and the Zipf exponent to every child (instead of a Zipf exponent
+     * of 1 and the fixed or empirical determiner probabilities)
+     */
+    private static final boolean fitZipf = false;
+    /** Where the (tab-separated) fitted parameters are written */
+    private static final String fitsOutFile = "yang-fits.csv";
+    /** Whether to compute the diversity of a sliding window over the pairs of every child */
+    private static final boolean slidingWindow = false;
+    /** The number of determiner-noun pairs in a window */
+    private static final int windowSize = 500;
+    /** The number of pairs between the starts of two windows */
+    private static final int windowStride = 50;
+    /** Where the (tab-separated) diversity of every window is written */
+    private static final String windowsOutFile = "yang-windows.csv";
+    /** Whether to compute the diversity as a function of the sample size */
+    private static final boolean subsampleCurve = false;
+    /** The number of random orderings of the pairs the subsample curves are averaged over */
+    private static final int numOrderings = 100;
+    /** The number of subsample sizes, evenly spaced up to the size of the corpus (100 for every 1%) */
+    private static final int numCheckpoints = 100;
+    /** Where the (tab-separated) subsample curves are written */
+    private static final String curvesOutFile = "yang-curves.csv";
+    /** Where the summary of the run metrics is written ({@code .json} and {@code .csv}), with {@code -Dmetrics=true} */
+    private static final String metricsPrefix = "yang-metrics";
+
+    private static final Metrics.Stage predictStage = Metrics.stage("predict");
+    private static final Metrics.Counter childrenCounter = Metrics.counter("replicate.children");
+
+    private final ChildResult result;
 
     public static void main(String[] args) throws IOException {
-        System.out.println("child\t#samples\t#noun-types\tempirical\tpredicted\tsimulated");
-        for (String child : new String[]{"naomi", "eve", "sarah", "adam", "peter", "nina"})
-            new YangReplicator(child);
+        String folder = (args.length > 0) ? args[0] : dataFolder;
+        List<ChildResult> results = new BatchRunner(folder, numThreads).run();
+        System.out.println(ChildResult.HEADER);
+        for (ChildResult result : results)
+            System.out.println(result.toRow());
+        BatchRunner.write(results, outFile);
+        BatchRunner.writePairs(results, pairsOutFile);
+        BatchRunner.writeBootstrap(results, bootstrapOutFile);
+        BatchRunner.writeWindows(results, windowsOutFile);
+        BatchRunner.writeFits(results, fitsOutFile);
+        BatchRunner.writeCurves(results, curvesOutFile);
+        Metrics.write(metricsPrefix);
     }
 
-	public YangReplicator(String child) throws IOException {
-        String dataFolder = "data/tagged";
-		String file = dataFolder + File.separator + child + ".txt";
-
-		Counter<Pair<String, String>> sampleCounter = new Counter<>();
-		Counter<String> detInSampleCounter = new Counter<>();
-		List<String> determiners = new ArrayList<>();
-		Counter<String> nounInSampleCounter = new Counter<>();
-		List<String> nouns = new ArrayList<>();
-		List<String> lines = removeRepeatedSents(LineIO.read(file));
-		Pair<String, String> prevPair = null;
-		for (int i = 1; i < lines.size(); i++) {
-			String line = lines.get(i);
-			String[] splits = line.split("\\s+");
-			String word = splits[0];
-			String pos = splits[1];
-			if (pos.equals(",") || pos.equals("SENT")) continue;
-			if (pos.equals("NN") && getDet(lines.get(i - 1)) != null) {
-				String det = getDet(lines.get(i - 1));
-				Pair<String, String> detNounPair = new Pair<>(det, word);
-				if (prevPair != null && detNounPair.equals(prevPair)) continue;
-				determiners.add(det);
-				nouns.add(word);
-
-				detInSampleCounter.incrementCount(det);
-				sampleCounter.incrementCount(detNounPair);
-				nounInSampleCounter.incrementCount(word);
-				prevPair = new Pair<>(detNounPair.getFirst(), detNounPair.getSecond());
+	/**
+	 * @param child The name of the child
+	 * @param file The preprocessed (cleaned and tagged) data of the child
+	 * @param executor The pool that runs the random reassignments, the bootstrap replicates and the subsample
+	 *                 orderings (shared by all the children)
+	 */
+	public YangReplicator(String child, String file, ExecutorService executor) throws IOException {
+		this(child, readTable(file), executor);
+	}
+
+	/**
+	 * @param child The name of the child
+	 * @param table The determiner-noun pairs of the child, for {@link #determiners()}
+	 * @param executor The pool that runs the random reassignments, the bootstrap replicates and the subsample
+	 *                 orderings (shared by all the children)
+	 */
+	public YangReplicator(String child, DetNounTable table, ExecutorService executor) {
+		// Randomly reassign the determiners to the nouns (numPermutations times)
+		long childSeed = new SplittableRng(seed).split(child.hashCode()).nextLong();
+		PermutationTest.Result simulated = new PermutationTest(table, executor, childSeed).run(numPermutations);
+
+		double empiricalProb = getEmpiricalProb(table.diverseTypes(), table.numNounTypes());
+		long start = predictStage.start();
+		// With fitZipf, every predicted value below (pairs, bootstrap, windows, curves) uses the fitted parameters
+		ZipfFit.Result fit = fitZipf ? ZipfFit.fit(table) : null;
+		double exponent = (fit == null) ? 1 : fit.exponent;
+		double predictedProb = getPredictedProb(table, table.allDets(), fit);
+		predictStage.stop(start);
+
+		List<DeterminerPairResult> pairs = new ArrayList<>();
+		if (determiners.length > 2) {
+			for (int det1 = 0; det1 < determiners.length; det1++) {
+				for (int det2 = det1 + 1; det2 < determiners.length; det2++) {
+					int pairMask = (1 << det1) | (1 << det2);
+					int pairTypes = table.numNounTypes(pairMask);
+					if (pairTypes == 0) continue;
+					pairs.add(new DeterminerPairResult(child, determiners[det1], determiners[det2],
+							table.size(pairMask), pairTypes,
+							getEmpiricalProb(table.diverseTypes(pairMask), pairTypes),
+							getPredictedProb(table, pairMask, fit)));
+				}
 			}
-			else if (!pos.equals("DT")) prevPair = null;
 		}
-		Collections.shuffle(determiners);
-		Counter<Pair<String,String>> randomSample = new Counter<>();
-		for (String noun : nouns) {
-			String determiner = determiners.remove(0);
-			randomSample.incrementCount(new Pair<>(determiner, noun));
+
+		BootstrapTest.Result intervals = null;
+		if (bootstrap) {
+			BootstrapTest test = new BootstrapTest(table, getDetProbs(table, table.allDets(), fit), exponent,
+					executor, new SplittableRng(childSeed).nextLong());
+			intervals = test.run(numBootstrapReplicates, bootstrapConfidence);
 		}
 
-		double empiricalProb = getEmpiricalProb(sampleCounter, nounInSampleCounter);
-		double simulatedProb = getEmpiricalProb(randomSample, nounInSampleCounter);
-		double predictedProb = getPredictedProb(detInSampleCounter, nounInSampleCounter.size(), sampleCounter.getTotal());
+		List<WindowResult> windows = new ArrayList<>();
+		if (slidingWindow)
+			windows = SlidingWindow.trajectory(child, table, windowSize, windowStride, exponent,
+					getDetProbs(table, table.allDets(), fit));
+
+		List<CurvePoint> curve = new ArrayList<>();
+		if (subsampleCurve) {
+			long curveSeed = new SplittableRng(childSeed).split(1).nextLong();
+			curve = new SubsampleCurve(table, executor, curveSeed).run(child, numOrderings, numCheckpoints,
+					exponent, getDetProbs(table, table.allDets(), fit));
+		}
 
-		System.out.println(child + "\t" + sampleCounter.getTotal() + "\t" + nounInSampleCounter.size() + "\t" +
-				StringUtils.getFormattedTwoDecimal(empiricalProb) + "\t" +
-				StringUtils.getFormattedTwoDecimal(predictedProb) + "\t" +
-				StringUtils.getFormattedTwoDecimal(simulatedProb));
+		result = new ChildResult(child, table.size(), table.numNounTypes(), empiricalProb, predictedProb,
+				simulated.mean, simulated.stdErr, simulated.pValue, pairs, intervals,
+				windows, fit, curve);
+		childrenCounter.increment();
 	}
 
-	private double getEmpiricalProb(Counter<Pair<String, String>> pairCounter, Counter<String> nounWithDetCounter) {
-		double totalNounsInPair = nounWithDetCounter.size();
-		double totalDiverse = 0;
-		for (String noun : nounWithDetCounter.items()) {
-			double countA = pairCounter.getCount(new Pair<>("a", noun));
-			double countThe = pairCounter.getCount(new Pair<>("the", noun));
-			if (countA > 0 && countThe > 0)
-				totalDiverse++;
-		}
-		return (totalDiverse / totalNounsInPair) * 100;
+	public ChildResult getResult() {
+		return result;
 	}
 
-	private double getPredictedProb(Counter<String> detInSampleCounter, int numNounsTypes, double sampleSize) {
-		double harmonic = getHarmonic(numNounsTypes);
-		double totalExpProb = 0;
-
-		double detAProb, detTheProb;
-        if (useZipfianDetBias) {
-            detAProb = detInSampleCounter.getCount("a") / detInSampleCounter.getTotal();
-            detTheProb = detInSampleCounter.getCount("the") / detInSampleCounter.getTotal();
-        }
-        else {
-            detTheProb = 2.0/3.0;
-            detAProb = 1 - detTheProb;
-        }
-
-        for (int rank = 1; rank < numNounsTypes + 1; rank++) {
-			double nounProb = 1 / (rank * harmonic);
-			double pow = Math.pow(1 - nounProb, sampleSize);
-			double probSum = Math.pow((detAProb * nounProb + 1 - nounProb), sampleSize) - pow;
-			probSum += Math.pow((detTheProb * nounProb + 1 - nounProb), sampleSize) - pow;
-			double expectedProb = (1 - pow) - probSum;
-			totalExpProb += expectedProb;
-		}
-		return (totalExpProb/ numNounsTypes) * 100;
+	/** @return The (lemmas of the) determiners that are analysed */
+	public static String[] determiners() {
+		return determiners.clone();
 	}
 
-	private double getHarmonic(int numTypes) {
-		double harm = 0;
-		for (double i = 1; i < numTypes + 1; i++) {
-			harm += 1/i;
-		}
-		return harm;
+	private static DetNounTable readTable(String file) throws IOException {
+		if (useCache)
+			return new CorpusCache(cacheFolder).load(file).toTable(determiners);
+		DetNounTable table = new DetNounTable(determiners);
+		new TaggedCorpusReader(file, table.nouns(), determiners).read(table);
+		return table;
 	}
 
-	private String getDet(String line) {
-		String lemma = line.split("\\s+")[2];
-		if (lemma.equals("a") || lemma.equals("the"))
-			return lemma;
-		return null;
+	private double getEmpiricalProb(int diverseTypes, int numNounTypes) {
+		return ((double) diverseTypes / numNounTypes) * 100;
+	}
+
+	/**
+	 * @param detMask The determiners to consider; the sample is restricted to their pairs
+	 * @param fit The fitted parameters, or {@code null} for a Zipf exponent of 1
+	 */
+	private double getPredictedProb(DetNounTable table, int detMask, ZipfFit.Result fit) {
+		double[] detProbs = getDetProbs(table, detMask, fit);
+		if (detProbs == null) {
+			// The relative frequencies of the determiners within the sample
+			detProbs = new double[Integer.bitCount(detMask)];
+			int i = 0;
+			for (int det = 0; det < determiners.length; det++)
+				if ((detMask & (1 << det)) != 0)
+					detProbs[i++] = (double) table.detCount(det) / table.size(detMask);
+		}
+		double exponent = (fit == null) ? 1 : fit.exponent;
+		return DiversityModel.predictedDiversity(table.numNounTypes(detMask), table.size(detMask), exponent, detProbs,
+				false, new double[DiversityModel.batchSize], new double[DiversityModel.batchSize]);
 	}
 
-	private List<String> removeRepeatedSents(List<String> lines) {
-		List<String> cleanSents = new ArrayList<>();
-		String sent = "", prevSent = "";
-		List<String> sentLines = new ArrayList<>();
-		for (String line : lines) {
-			String[] splits = line.split("\\s+");
-			String word = splits[0];
-			String pos = splits[1];
-			sent += word + " ";
-			sentLines.add(line);
-			if (pos.equals("SENT")) {
-				if (!sent.equals(prevSent)) {
-					cleanSents.addAll(sentLines);
+	/**
+	 * @param fit The fitted parameters, or {@code null}
+	 * @return The fixed probabilities of the determiners of {@code detMask} (the fitted ones, renormalised to the
+	 * determiners of the mask, if there is a fit), or {@code null} if the empirical frequencies are to be used
+	 */
+	private double[] getDetProbs(DetNounTable table, int detMask, ZipfFit.Result fit) {
+		if (fit != null) {
+			double[] detProbs = new double[Integer.bitCount(detMask)];
+			double total = 0;
+			int i = 0;
+			for (int det = 0; det < determiners.length; det++) {
+				if ((detMask & (1 << det)) != 0) {
+					detProbs[i++] = fit.detProbs[det];
+					total += fit.detProbs[det];
 				}
-				sentLines.clear();
-				prevSent = sent;
-				sent = "";
 			}
+			for (i = 0; i < detProbs.length; i++)
+				detProbs[i] /= total;
+			return detProbs;
+		}
+		if (!useZipfianDetBias && detMask == table.allDets()
+				&& Arrays.equals(determiners, TaggedCorpusReader.DETERMINERS)) {
+			double detTheProb = 2.0/3.0;
+			return new double[]{1 - detTheProb, detTheProb};
 		}
-		return cleanSents;
+		return null;
 	}
 }
@@ -0,0 +1,114 @@
+package determiners;
+
+import java.util.Arrays;
+
+/**
+ * Maximum likelihood estimates of the parameters of the predicted diversity for a corpus: the probability of
+ * every determiner, and the exponent {@code s} of a Zipfian distribution of the nouns over their frequency ranks,
+ * {@code p(r) = r^-s / H(N,s)}.
+ *
+ * The determiner probabilities are the relative frequencies of the determiners. For the exponent, the likelihood
+ * of the noun tokens is maximal where the mean log-rank under the Zipfian, {@code E_s[log r]}, equals the mean
+ * log-rank of the tokens; this is solved with Newton's method (safeguarded by bisection), where
+ * {@code d/ds E_s[log r] = -Var_s[log r]}. Each iteration is a single loop over a precomputed array of log-ranks,
+ * accumulating {@code H(N,s)} and the first two moments together.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class ZipfFit {
+    private static final double maxExponent = 10;
+    private static final double tolerance = 1e-12;
+    private static final int maxIterations = 100;
+
+    /** The fitted parameters of a corpus */
+    public static class Result {
+        public final double exponent;
+        /** The probability of every determiner of the table */
+        public final double[] detProbs;
+        /** The log-likelihood of the noun tokens under the fitted Zipfian */
+        public final double logLikelihood;
+        public final int iterations;
+
+        Result(double exponent, double[] detProbs, double logLikelihood, int iterations) {
+            this.exponent = exponent;
+            this.detProbs = detProbs;
+            this.logLikelihood = logLikelihood;
+            this.iterations = iterations;
+        }
+    }
+
+    private ZipfFit() {}
+
+    /**
+     * @param table The determiner-noun pairs of the corpus
+     * @return The fitted determiner probabilities and Zipf exponent
+     */
+    public static Result fit(DetNounTable table) {
+        int numDets = table.determiners().length;
+        double[] detProbs = new double[numDets];
+        for (int det = 0; det < numDets; det++)
+            detProbs[det] = (double) table.detCount(det) / table.size();
+
+        int[] freqs = new int[table.numNounTypes()];
+        for (int noun = 0; noun < freqs.length; noun++)
+            for (int det = 0; det < numDets; det++)
+                freqs[noun] += table.count(det, noun);
+        return fitExponent(freqs, detProbs);
+    }
+
+    /**
+     * @param freqs The frequency of every noun type (in any order; it is sorted in place)
+     * @param detProbs The determiner probabilities to include in the result
+     */
+    static Result fitExponent(int[] freqs, double[] detProbs) {
+        Arrays.sort(freqs);
+        int numTypes = freqs.length;
+        double[] logRanks = new double[numTypes];
+        double totalFreq = 0, totalLogRank = 0;
+        for (int r = 0; r < numTypes; r++) {
+            logRanks[r] = Math.log(r + 1);
+            // The most frequent noun has rank 1
+            int freq = freqs[numTypes - 1 - r];
+            totalFreq += freq;
+            totalLogRank += freq * logRanks[r];
+        }
+        if (numTypes < 2 || totalFreq == 0) return new Result(1, detProbs, 0, 0);
+        double meanLogRank = totalLogRank / totalFreq;
+
+        // g(s) = E_s[log r] - meanLogRank is decreasing in s, with g(0) >= 0 for frequencies sorted by rank
+        double low = 0, high = maxExponent, s = 1;
+        double[] moments = new double[3];
+        int iteration = 0;
+        while (iteration++ < maxIterations) {
+            moments(logRanks, s, moments);
+            double mean = moments[1] / moments[0];
+            double variance = moments[2] / moments[0] - mean * mean;
+            double g = mean - meanLogRank;
+            if (g > 0) low = s;
+            else high = s;
+            double next = (variance > 0) ? s + g / variance : Double.NaN;
+            // Fall back to bisection if the Newton step leaves the bracket
+            if (!(next > low && next < high)) next = (low + high) / 2;
+            boolean converged = Math.abs(next - s) < tolerance || Math.abs(g) < tolerance;
+            s = next;
+            if (converged || high - low < tolerance) break;
+        }
+        moments(logRanks, s, moments);
+        double logLikelihood = -s * totalLogRank - totalFreq * Math.log(moments[0]);
+        return new Result(s, detProbs, logLikelihood, iteration);
+    }
+
+    /** Computes H(N,s) = sum r^-s and the sums of r^-s log r and r^-s log^2 r */
+    private static void moments(double[] logRanks, double s, double[] moments) {
+        double z = 0, m1 = 0, m2 = 0;
+        for (double logRank : logRanks) {
+            double w = Math.exp(-s * logRank);
+            z += w;
+            m1 += w * logRank;
+            m2 += w * logRank * logRank;
+        }
+        moments[0] = z;
+        moments[1] = m1;
+        moments[2] = m2;
+    }
+}
@@ -0,0 +1,362 @@
+package determiners.readers;
+
+import determiners.DetNounTable;
+import determiners.Metrics;
+import determiners.Vocabulary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * A compiled binary version of a tagged corpus file, so that repeated runs do not have to re-read and re-tokenize
+ * the text. The cache file holds:
+ * <ul>
+ *     <li>the size, modification time and hash of the source file</li>
+ *     <li>a vocabulary of all the words, POS tags and lemmas</li>
+ *     <li>the word, POS and lemma columns of every token as vocabulary ids</li>
+ *     <li>the sentence boundaries, with a flag for the sentences that repeat the previous one</li>
+ *     <li>the determiner-noun pairs for {@link TaggedCorpusReader#DETERMINERS}</li>
+ * </ul>
+ * The pairs of any other set of determiners are extracted from the cached columns (see
+ * {@link CachedCorpus#toTable(String[])}).
+ * Caches are rebuilt whenever the source file changes, and are loaded by memory-mapping the file; the columns are
+ * used directly from the mapping. Cache files are named after the full (canonical) path of their source, so files
+ * with the same name in different folders get different caches.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class CorpusCache {
+    private static final int MAGIC = 0x444e4343;
+    private static final int VERSION = 1;
+    /** The position of the modification time of the source in the header (after the magic, version and size) */
+    private static final int modifiedOffset = 16;
+
+    private static final Metrics.Stage cacheStage = Metrics.stage("cache");
+    private static final Metrics.Counter rebuildsCounter = Metrics.counter("cache.rebuilds");
+
+    private final File cacheFolder;
+
+    /**
+     * @param cacheFolder The folder where the cache files are kept (created if needed)
+     */
+    public CorpusCache(String cacheFolder) {
+        this.cacheFolder = new File(cacheFolder);
+    }
+
+    /** A tagged corpus loaded from its cache */
+    public static class CachedCorpus {
+        private final Vocabulary vocabulary;
+        private final IntBuffer words, pos, lemmas;
+        private final IntBuffer sentenceEnds;
+        private final ByteBuffer repeated;
+        private final String[] determiners;
+        private final IntBuffer nounWords, pairDets, pairNouns;
+
+        CachedCorpus(Vocabulary vocabulary, IntBuffer words, IntBuffer pos, IntBuffer lemmas, IntBuffer sentenceEnds,
+                     ByteBuffer repeated, String[] determiners, IntBuffer nounWords, IntBuffer pairDets,
+                     IntBuffer pairNouns) {
+            this.vocabulary = vocabulary;
+            this.words = words;
+            this.pos = pos;
+            this.lemmas = lemmas;
+            this.sentenceEnds = sentenceEnds;
+            this.repeated = repeated;
+            this.determiners = determiners;
+            this.nounWords = nounWords;
+            this.pairDets = pairDets;
+            this.pairNouns = pairNouns;
+        }
+
+        /** The vocabulary of the word, POS and lemma columns */
+        public Vocabulary vocabulary() {
+            return vocabulary;
+        }
+
+        public int numTokens() {
+            return words.limit();
+        }
+
+        public int word(int token) {
+            return words.get(token);
+        }
+
+        public int pos(int token) {
+            return pos.get(token);
+        }
+
+        public int lemma(int token) {
+            return lemmas.get(token);
+        }
+
+        public int numSentences() {
+            return sentenceEnds.limit();
+        }
+
+        /** @return The index after the last token of the sentence */
+        public int sentenceEnd(int sentence) {
+            return sentenceEnds.get(sentence);
+        }
+
+        /** @return Whether the sentence repeats the previous one */
+        public boolean isRepeated(int sentence) {
+            return repeated.get(sentence) != 0;
+        }
+
+        /** @return The determiner-noun pairs of {@link TaggedCorpusReader#DETERMINERS}, as stored in the cache */
+        public DetNounTable toTable() {
+            DetNounTable table = new DetNounTable(determiners);
+            // Nouns are stored in order of their ids
+            for (int noun = 0; noun < nounWords.limit(); noun++)
+                table.nouns().id(vocabulary.word(nounWords.get(noun)));
+            for (int i = 0; i < pairDets.limit(); i++)
+                table.pair(pairDets.get(i), pairNouns.get(i));
+            return table;
+        }
+
+        /**
+         * Extracts the determiner-noun pairs of any set of determiners from the cached columns, with the same rules
+         * as {@link TaggedCorpusReader}. The stored pairs are used if the determiners are the cached ones.
+         *
+         * @param determiners The (lemmas of the) determiners to extract
+         */
+        public DetNounTable toTable(String[] determiners) {
+            if (Arrays.equals(determiners, this.determiners)) return toTable();
+            DetNounTable table = new DetNounTable(determiners);
+            // The kind of POS tag and the determiner id of every entry of the vocabulary
+            byte[] posKinds = new byte[vocabulary.size()], detIds = new byte[vocabulary.size()];
+            for (int id = 0; id < vocabulary.size(); id++)
+                posKinds[id] = PairExtractor.posKind(vocabulary.word(id));
+            Arrays.fill(detIds, PairExtractor.NO_DET);
+            for (byte d = 0; d < determiners.length; d++) {
+                int id = vocabulary.lookup(determiners[d]);
+                if (id >= 0) detIds[id] = d;
+            }
+
+            PairExtractor extractor = new PairExtractor();
+            int start = 0;
+            for (int s = 0; s < numSentences(); s++) {
+                int end = sentenceEnd(s);
+                if (!isRepeated(s)) {
+                    for (int t = start; t < end; t++) {
+                        byte det = extractor.next(posKinds[pos.get(t)], detIds[lemmas.get(t)]);
+                        if (det != PairExtractor.NO_DET)
+                            extractor.pair(det, table.nouns().id(vocabulary.word(words.get(t))), table);
+                    }
+                }
+                start = end;
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Loads the cache of a tagged corpus file, (re)building it if it is missing or out of date.
+     *
+     * @param sourceFile The tagged corpus file
+     */
+    public CachedCorpus load(String sourceFile) throws IOException {
+        File source = new File(sourceFile);
+        File cache = new File(cacheFolder, cacheName(source));
+        Metrics.Span span = cacheStage.span();
+        try {
+            if (!isValid(cache, source)) {
+                build(source, cache);
+                rebuildsCounter.increment();
+            }
+            return map(cache);
+        }
+        finally {
+            span.stop();
+        }
+    }
+
+    /** @return The name of the cache file of a source file: its name and a hash of its canonical path */
+    static String cacheName(File source) throws IOException {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : source.getCanonicalPath().getBytes(StandardCharsets.UTF_8))
+            hash = (hash ^ (b & 0xff)) * 1099511628211L;
+        return source.getName() + "-" + String.format("%016x", hash) + ".bin";
+    }
+
+    private boolean isValid(File cache, File source) throws IOException {
+        if (!cache.isFile()) return false;
+        try (RandomAccessFile file = new RandomAccessFile(cache, "r")) {
+            if (file.length() < 32 || file.readInt() != MAGIC || file.readInt() != VERSION) return false;
+            long size = file.readLong(), modified = file.readLong(), hash = file.readLong();
+            if (size != source.length()) return false;
+            if (modified == source.lastModified()) return true;
+            // Same size but touched since; only rebuild if the contents have changed
+            if (hash != hash(source)) return false;
+        }
+        // Record the new modification time, so that the next loads do not hash the source again
+        try (RandomAccessFile file = new RandomAccessFile(cache, "rw")) {
+            file.seek(modifiedOffset);
+            file.writeLong(source.lastModified());
+        }
+        catch (IOException e) {
+            // A read-only cache is still valid; it is just checked more slowly
+        }
+        return true;
+    }
+
+    private void build(File source, File cache) throws IOException {
+        final Vocabulary vocabulary = new Vocabulary();
+        final IntColumn words = new IntColumn(), pos = new IntColumn(), lemmas = new IntColumn();
+        final IntColumn sentenceEnds = new IntColumn(), repeated = new IntColumn();
+        final DetNounTable table = new DetNounTable(TaggedCorpusReader.DETERMINERS);
+        new TaggedCorpusReader(source.getPath(), table.nouns()).read(table, vocabulary,
+                new TaggedCorpusReader.SentenceHandler() {
+                    @Override
+                    public void sentence(int[] sentWords, int[] sentPos, int[] sentLemmas, int length,
+                                        boolean isRepeated) {
+                        words.add(sentWords, length);
+                        pos.add(sentPos, length);
+                        lemmas.add(sentLemmas, length);
+                        sentenceEnds.add(words.size);
+                        repeated.add(isRepeated ? 1 : 0);
+                    }
+                });
+
+        if (!cacheFolder.isDirectory() && !cacheFolder.mkdirs())
+            throw new IOException("Cannot create cache folder " + cacheFolder);
+        File tmp = File.createTempFile(cache.getName(), ".tmp", cacheFolder);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            out.writeLong(hash(source));
+
+            out.writeInt(vocabulary.size());
+            for (int id = 0; id < vocabulary.size(); id++)
+                writeString(out, vocabulary.word(id));
+            // Pad so that the int columns are aligned
+            int padding = (4 - out.size() % 4) % 4;
+            for (int i = 0; i < padding; i++) out.writeByte(0);
+
+            out.writeInt(words.size);
+            words.write(out);
+            pos.write(out);
+            lemmas.write(out);
+            out.writeInt(sentenceEnds.size);
+            sentenceEnds.write(out);
+            for (int i = 0; i < repeated.size; i++)
+                out.writeByte(repeated.values[i]);
+            padding = (4 - out.size() % 4) % 4;
+            for (int i = 0; i < padding; i++) out.writeByte(0);
+
+            String[] determiners = table.determiners();
+            out.writeInt(determiners.length);
+            for (String det : determiners)
+                writeString(out, det);
+            out.writeInt(table.numNounTypes());
+            for (int noun = 0; noun < table.numNounTypes(); noun++)
+                out.writeInt(vocabulary.id(table.nouns().word(noun)));
+            out.writeInt(table.size());
+            for (int i = 0; i < table.size(); i++)
+                out.writeInt(table.tokenDets()[i]);
+            for (int i = 0; i < table.size(); i++)
+                out.writeInt(table.tokenNouns()[i]);
+        }
+        Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private CachedCorpus map(File cache) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(cache, "r")) {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        buffer.position(32);
+        Vocabulary vocabulary = new Vocabulary();
+        int vocabularySize = buffer.getInt();
+        for (int id = 0; id < vocabularySize; id++)
+            vocabulary.id(readString(buffer));
+        buffer.position((buffer.position() + 3) & ~3);
+
+        int numTokens = buffer.getInt();
+        IntBuffer words = intColumn(buffer, numTokens);
+        IntBuffer pos = intColumn(buffer, numTokens);
+        IntBuffer lemmas = intColumn(buffer, numTokens);
+        int numSentences = buffer.getInt();
+        IntBuffer sentenceEnds = intColumn(buffer, numSentences);
+        ByteBuffer repeated = buffer.slice();
+        repeated.limit(numSentences);
+        buffer.position((buffer.position() + numSentences + 3) & ~3);
+
+        String[] determiners = new String[buffer.getInt()];
+        for (int d = 0; d < determiners.length; d++)
+            determiners[d] = readString(buffer);
+        IntBuffer nounWords = intColumn(buffer, buffer.getInt());
+        int numPairs = buffer.getInt();
+        IntBuffer pairDets = intColumn(buffer, numPairs);
+        IntBuffer pairNouns = intColumn(buffer, numPairs);
+        return new CachedCorpus(vocabulary, words, pos, lemmas, sentenceEnds, repeated, determiners, nounWords,
+                pairDets, pairNouns);
+    }
+
+    /** @return A view of the next {@code length} ints of the buffer, advancing it past them */
+    private static IntBuffer intColumn(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(4 * length);
+        buffer.position(buffer.position() + 4 * length);
+        return slice.asIntBuffer();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** FNV-1a hash of the contents of a file */
+    static long hash(File file) throws IOException {
+        long hash = 0xcbf29ce484222325L;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            while (buffer.hasRemaining())
+                hash = (hash ^ (buffer.get() & 0xff)) * 1099511628211L;
+        }
+        return hash;
+    }
+
+    /** A growable column of ints */
+    private static class IntColumn {
+        int[] values = new int[1024];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, 2 * size);
+            values[size++] = value;
+        }
+
+        void add(int[] newValues, int length) {
+            if (size + length > values.length)
+                values = Arrays.copyOf(values, Math.max(2 * values.length, size + length));
+            System.arraycopy(newValues, 0, values, size, length);
+            size += length;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++)
+                out.writeInt(values[i]);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package determiners.readers;
+
+import determiners.ChildResult;
+import determiners.DetNounTable;
+import determiners.Metrics;
+import determiners.YangReplicator;
+import edu.illinois.cs.cogcomp.core.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An in-process version of the whole preprocessing: the utterances of the CHILDES XML files are extracted (as in
+ * {@link StaxCorpusCleaner}), tokenized and tagged by a {@link Tagger}, and the determiner-noun pairs are counted
+ * (as in {@link TaggedCorpusReader}), without writing any intermediate files.
+ *
+ * The three stages run concurrently, connected by bounded queues of batches: a stage that gets ahead blocks until
+ * the next one catches up, so the memory used does not depend on the size of the corpus.
+ *
+ * If a stage fails, the stages before it are cancelled (interrupting them if they are blocked on a full queue),
+ * and the stages after it get the end of their input. A stage that stops early clears its output queue before
+ * adding the end marker, so it never blocks once it has failed or been interrupted, and no thread is left waiting.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class CorpusPipeline {
+    private static final String dataFolder = "data";
+    private static final String child = "Nina";
+
+    /** The folder containing the individual data for each child */
+    private static final String subFolder = dataFolder + "/xml-files/Suppes/Nina/";
+
+    /** Which speaker to collect data for. Can be CHI (children) or MOT (mothers) */
+    private static final String WHO = "CHI";
+
+    /** The maximum number of batches waiting between two stages */
+    private static final int queueCapacity = 16;
+    /** The number of utterances in a batch */
+    private static final int batchSize = 256;
+
+    private static final Metrics.Stage extractStage = Metrics.stage("extract");
+    private static final Metrics.Stage tagStage = Metrics.stage("tag");
+    private static final Metrics.Counter utterancesCounter = Metrics.counter("extract.utterances");
+    private static final Metrics.Counter tokensCounter = Metrics.counter("tag.tokens");
+
+    /** Marks the end of a queue */
+    private static final List<String> noMoreUtterances = new ArrayList<>(0);
+    private static final TaggedBatch noMoreTokens = new TaggedBatch(0);
+
+    private final Tagger tagger;
+    private final int capacity;
+
+    /**
+     * Runs the whole pipeline on the XML files of a child and prints the results of {@link YangReplicator}.
+     * Arguments (all optional): the folder of the XML files, the name of the child, and a lexicon file that
+     * extends the default lexicon of the {@link LexiconTagger} (in the format of the tagged corpora).
+     */
+    public static void main(String[] args) throws IOException {
+        String folder = (args.length > 0) ? args[0] : subFolder;
+        String name = (args.length > 1) ? args[1] : child;
+        LexiconTagger tagger = new LexiconTagger().loadDefault();
+        if (args.length > 2) tagger.load(args[2]);
+
+        DetNounTable table = new DetNounTable(YangReplicator.determiners());
+        TaggedCorpusReader reader = new TaggedCorpusReader(table.nouns(), table.determiners());
+        new CorpusPipeline(tagger, queueCapacity).run(folder, WHO, reader, table);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            System.out.println(ChildResult.HEADER);
+            System.out.println(new YangReplicator(name, table, executor).getResult().toRow());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        Metrics.write("pipeline-metrics");
+    }
+
+    /**
+     * @param tagger The tagger of the utterances (used by a single thread)
+     * @param capacity The maximum number of batches waiting between two stages
+     */
+    public CorpusPipeline(Tagger tagger, int capacity) {
+        this.tagger = tagger;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Extracts, tags and counts all the files of a folder (in the order of {@link StaxCorpusCleaner}). The
+     * counting runs on the calling thread.
+     *
+     * @param folder The folder containing the XML files of a single child
+     * @param who Which speaker to collect data for
+     * @param reader Receives the tagged tokens (see {@link TaggedCorpusReader#token(String, String, String)})
+     * @param handler Receives the determiner-noun pairs
+     */
+    public void run(String folder, String who, TaggedCorpusReader reader, TaggedCorpusReader.PairHandler handler)
+            throws IOException {
+        BlockingQueue<List<String>> utterances = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<TaggedBatch> tokens = new ArrayBlockingQueue<>(capacity);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Void> extraction = executor.submit(new Extraction(folder, who, utterances));
+        Future<Void> tagging = executor.submit(new Tagging(utterances, tokens));
+        try {
+            reader.start(handler, null, null);
+            TaggedBatch batch;
+            while ((batch = tokens.take()) != noMoreTokens) {
+                for (int i = 0; i < batch.size; i++)
+                    reader.token(batch.words[i], batch.pos[i], batch.lemmas[i]);
+            }
+            reader.finish();
+            // The tagging stage finishes normally only after the extraction stage has
+            tagging.get();
+            extraction.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        finally {
+            // Stops the stages if counting or tagging failed (no-op if they have finished)
+            tagging.cancel(true);
+            extraction.cancel(true);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Ends a queue after its producer failed or was interrupted. The queue is cleared first, so that the end marker
+     * fits without blocking: its consumer is then told to stop, and any batches in flight are dropped.
+     */
+    private static <T> void abort(BlockingQueue<T> queue, T noMoreItems) {
+        queue.clear();
+        queue.offer(noMoreItems);
+    }
+
+    /** Splits an utterance into tokens, separating clitics such as {@code n't} and {@code 's} */
+    static void tokenize(String utterance, List<String> tokens) {
+        for (String word : utterance.trim().split("\\s+")) {
+            if (word.isEmpty()) continue;
+            String lower = word.toLowerCase();
+            int clitic = -1;
+            if (lower.endsWith("n't") && lower.length() > 3) clitic = word.length() - 3;
+            else {
+                int apostrophe = word.lastIndexOf('\'');
+                if (apostrophe > 0 && apostrophe < word.length() - 1) {
+                    String suffix = lower.substring(apostrophe);
+                    if (suffix.equals("'s") || suffix.equals("'m") || suffix.equals("'re") || suffix.equals("'ve")
+                            || suffix.equals("'ll") || suffix.equals("'d"))
+                        clitic = apostrophe;
+                }
+            }
+            if (clitic > 0) {
+                tokens.add(word.substring(0, clitic));
+                tokens.add(word.substring(clitic));
+            }
+            else tokens.add(word);
+        }
+    }
+
+    /** The tagged tokens of a batch of utterances; every utterance ends with a {@code SENT} token */
+    private static class TaggedBatch {
+        String[] words, pos, lemmas;
+        int size;
+
+        TaggedBatch(int capacity) {
+            words = new String[capacity];
+            pos = new String[capacity];
+            lemmas = new String[capacity];
+        }
+
+        void add(String word, String tag, String lemma) {
+            if (size == words.length) {
+                int grown = Math.max(16, 2 * size);
+                words = Arrays.copyOf(words, grown);
+                pos = Arrays.copyOf(pos, grown);
+                lemmas = Arrays.copyOf(lemmas, grown);
+            }
+            words[size] = word;
+            pos[size] = tag;
+            lemmas[size] = lemma;
+            size++;
+        }
+    }
+
+    /** Extracts the utterances of the files, in batches */
+    private static class Extraction implements Callable<Void> {
+        private final String folder, who;
+        private final BlockingQueue<List<String>> out;
+
+        Extraction(String folder, String who, BlockingQueue<List<String>> out) {
+            this.folder = folder;
+            this.who = who;
+            this.out = out;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            Metrics.Span span = extractStage.span();
+            try {
+                List<String> batch = new ArrayList<>(batchSize);
+                for (String file : IOUtils.ls(folder)) {
+                    try (StaxCorpusCleaner cleaner = new StaxCorpusCleaner(new File(folder, file).getPath(), who)) {
+                        String utt;
+                        while ((utt = cleaner.nextUtterance()) != null) {
+                            utterancesCounter.increment();
+                            if (utt.trim().equals(".")) continue;
+                            batch.add(utt);
+                            if (batch.size() == batchSize) {
+                                out.put(batch);
+                                batch = new ArrayList<>(batchSize);
+                            }
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) out.put(batch);
+                out.put(noMoreUtterances);
+            }
+            catch (Exception | Error e) {
+                abort(out, noMoreUtterances);
+                throw e;
+            }
+            finally {
+                span.stop();
+            }
+            return null;
+        }
+    }
+
+    /** Tokenizes and tags the batches of utterances */
+    private class Tagging implements Callable<Void> {
+        private final BlockingQueue<List<String>> in;
+        private final BlockingQueue<TaggedBatch> out;
+
+        Tagging(BlockingQueue<List<String>> in, BlockingQueue<TaggedBatch> out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            Metrics.Span span = tagStage.span();
+            try {
+                List<String> words = new ArrayList<>();
+                String[] wordArray = new String[64], pos = new String[64], lemmas = new String[64];
+                List<String> batch;
+                while ((batch = in.take()) != noMoreUtterances) {
+                    TaggedBatch tagged = new TaggedBatch(16 * batch.size());
+                    for (String utterance : batch) {
+                        words.clear();
+                        tokenize(utterance, words);
+                        if (words.isEmpty()) continue;
+                        if (words.size() > wordArray.length) {
+                            wordArray = new String[2 * words.size()];
+                            pos = new String[wordArray.length];
+                            lemmas = new String[wordArray.length];
+                        }
+                        wordArray = words.toArray(wordArray);
+                        tagger.tag(wordArray, words.size(), pos, lemmas);
+                        for (int i = 0; i < words.size(); i++)
+                            tagged.add(wordArray[i], pos[i], lemmas[i]);
+                        // Every utterance is a sentence, even without final punctuation
+                        if (!"SENT".equals(pos[words.size() - 1]))
+                            tagged.add(".", "SENT", ".");
+                    }
+                    tokensCounter.add(tagged.size);
+                    out.put(tagged);
+                }
+                out.put(noMoreTokens);
+            }
+            catch (Exception | Error e) {
+                abort(out, noMoreTokens);
+                throw e;
+            }
+            finally {
+                span.stop();
+            }
+            return null;
+        }
+    }
+}
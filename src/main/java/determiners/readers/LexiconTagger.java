@@ -0,0 +1,213 @@
+package determiners.readers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A simple local {@link Tagger}: words are looked up in a lexicon of closed-class words (determiners, pronouns,
+ * prepositions, auxiliaries, ...), and any other word is tagged by its suffix, defaulting to {@code NN}. A
+ * {@code 's} after a noun is tagged as a possessive ({@code POS}), otherwise as a form of "be".
+ *
+ * The lexicon can be extended with a file in the format of the tagged corpora (one {@code word POS lemma} token
+ * per line), such as one of the tagged corpora itself; every word then gets its most frequent tag and lemma.
+ * The closed-class words alone are not enough, since every unknown adjective or verb without a known suffix
+ * ("a big dog", "that fell") would become a noun after a determiner, so a default lexicon of the ~6,000 words of
+ * all the tagged corpora in {@code data/tagged} is shipped as a resource (see {@link #loadDefault()}). It was
+ * built with {@link #main(String[])} and needs none of the tagged corpora at run time. Tagging the words of the
+ * tagged corpora with it gives their tags for about 95% of the tokens (94% with a lexicon built without the corpus
+ * being tagged), against about 82% with the closed-class words alone.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class LexiconTagger implements Tagger {
+    /** The built-in lexicon, as {@code word/POS/lemma} entries (the lemma defaults to the word) */
+    private static final String[] closedClass = {
+            "a/DT", "an/DT/a", "the/DT", "this/DT", "that/DT", "these/DT/this", "those/DT/that", "some/DT",
+            "no/DT", "all/DT", "another/DT", "any/DT", "both/DT", "each/DT", "every/DT", "either/DT",
+            "neither/DT",
+            "I/PP/i", "i/PP", "you/PP", "he/PP", "she/PP", "it/PP", "we/PP", "they/PP", "me/PP", "him/PP",
+            "us/PP", "them/PP", "myself/PP", "yourself/PP", "mine/PP", "yours/PP",
+            "my/PP$", "your/PP$", "his/PP$", "her/PP$", "its/PP$", "our/PP$", "their/PP$",
+            "on/IN", "in/IN", "up/IN", "for/IN", "like/IN", "with/IN", "out/IN", "of/IN", "at/IN", "off/IN",
+            "over/IN", "because/IN", "around/IN", "into/IN", "under/IN", "from/IN", "about/IN", "if/IN",
+            "and/CC", "but/CC", "or/CC",
+            "to/TO", "na/TO",
+            "can/MD", "will/MD", "could/MD", "'ll/MD/will", "would/MD", "wo/MD", "may/MD", "should/MD",
+            "might/MD", "must/MD", "shall/MD",
+            "be/VB", "is/VBZ/be", "'s/VBZ/be", "are/VBP/be", "'re/VBP/be", "am/VBP/be", "'m/VBP/be",
+            "was/VBD/be", "were/VBD/be", "been/VBN/be", "being/VBG/be",
+            "have/VHP", "'ve/VHP/have", "has/VHZ/have", "had/VHD/have", "having/VHG/have",
+            "do/VVP", "does/VVZ/do", "did/VVD/do", "ca/MD/can", "n't/RB/not", "not/RB",
+            "here/RB", "now/RB", "too/RB", "back/RB", "just/RB", "again/RB", "then/RB", "so/RB", "away/RB",
+            "very/RB", "down/RB",
+            "there/EX",
+            "what/WP", "who/WP", "where/WRB", "why/WRB", "how/WRB", "when/WRB", "which/WDT",
+            "yeah/UH", "oh/UH", "huh/UH", "yes/UH", "uh/UH", "hey/UH", "please/UH", "ah/UH", "hello/UH",
+            "okay/UH", "ok/UH", "hi/UH", "bye/UH", "no/UH",
+            "one/CD", "two/CD", "three/CD", "four/CD", "five/CD", "six/CD", "seven/CD", "eight/CD", "nine/CD",
+            "ten/CD",
+            "./SENT", "?/SENT", "!/SENT", ",/,",
+    };
+
+    /** The default lexicon, a resource next to this class in the format of the tagged corpora */
+    private static final String defaultLexicon = "lexicon.txt";
+
+    /** word -> {POS, lemma} */
+    private final Map<String, String[]> lexicon = new HashMap<>();
+
+    public LexiconTagger() {
+        for (String entry : closedClass) {
+            String[] fields = entry.split("/");
+            // The first entry of an ambiguous word wins
+            if (!lexicon.containsKey(fields[0]))
+                lexicon.put(fields[0], new String[]{fields[1], fields.length > 2 ? fields[2] : fields[0]});
+        }
+    }
+
+    /**
+     * Adds (or replaces) the entries of a lexicon file in the format of the tagged corpora: every word gets its
+     * most frequent tag and lemma in the file.
+     */
+    public LexiconTagger load(String lexiconFile) throws IOException {
+        return load(new FileInputStream(lexiconFile));
+    }
+
+    /**
+     * Adds (or replaces) the entries of the default lexicon, which has the most frequent tag and lemma of every
+     * word of the tagged corpora.
+     */
+    public LexiconTagger loadDefault() throws IOException {
+        InputStream in = LexiconTagger.class.getResourceAsStream(defaultLexicon);
+        if (in == null) throw new FileNotFoundException("Default lexicon " + defaultLexicon + " not found");
+        return load(in);
+    }
+
+    private LexiconTagger load(InputStream in) throws IOException {
+        Map<String, Map<String, Integer>> counts = new HashMap<>();
+        count(in, counts);
+        lexicon.putAll(mostFrequent(counts));
+        return this;
+    }
+
+    /** Counts the {@code tag\tlemma} of every word of a file in the format of the tagged corpora (and closes it) */
+    private static void count(InputStream in, Map<String, Map<String, Integer>> counts) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length < 3) continue;
+                Map<String, Integer> wordCounts = counts.get(fields[0]);
+                if (wordCounts == null) {
+                    wordCounts = new HashMap<>();
+                    counts.put(fields[0], wordCounts);
+                }
+                String tagLemma = fields[1] + "\t" + fields[2];
+                Integer count = wordCounts.get(tagLemma);
+                wordCounts.put(tagLemma, count == null ? 1 : count + 1);
+            }
+        }
+    }
+
+    /** @return The most frequent {POS, lemma} of every word (the first in alphabetical order on ties) */
+    private static Map<String, String[]> mostFrequent(Map<String, Map<String, Integer>> counts) {
+        Map<String, String[]> best = new HashMap<>();
+        for (Map.Entry<String, Map<String, Integer>> entry : counts.entrySet()) {
+            String bestTagLemma = null;
+            int bestCount = 0;
+            for (Map.Entry<String, Integer> tagLemma : entry.getValue().entrySet()) {
+                int count = tagLemma.getValue();
+                if (count > bestCount || (count == bestCount && tagLemma.getKey().compareTo(bestTagLemma) < 0)) {
+                    bestTagLemma = tagLemma.getKey();
+                    bestCount = count;
+                }
+            }
+            best.put(entry.getKey(), bestTagLemma.split("\t"));
+        }
+        return best;
+    }
+
+    /**
+     * Writes a lexicon with the most frequent tag and lemma of every word of the given tagged corpora, one
+     * {@code word POS lemma} line per word in alphabetical order. The default lexicon was built from all the files
+     * of {@code data/tagged}.
+     * Arguments: the lexicon file to write, followed by the tagged corpora.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LexiconTagger <lexicon file> <tagged file>...");
+            System.exit(-1);
+        }
+        Map<String, Map<String, Integer>> counts = new HashMap<>();
+        for (int i = 1; i < args.length; i++)
+            count(new FileInputStream(args[i]), counts);
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String[]> entry : new TreeMap<>(mostFrequent(counts)).entrySet()) {
+                out.write(entry.getKey() + "\t" + entry.getValue()[0] + "\t" + entry.getValue()[1]);
+                out.newLine();
+            }
+        }
+    }
+
+    @Override
+    public void tag(String[] words, int length, String[] pos, String[] lemmas) {
+        for (int i = 0; i < length; i++) {
+            String word = words[i];
+            String[] entry = lexicon.get(word);
+            if (entry == null) entry = lexicon.get(word.toLowerCase());
+            if (entry != null) {
+                pos[i] = entry[0];
+                lemmas[i] = entry[1];
+            }
+            else guess(word, i, pos, lemmas);
+            if (i > 0 && word.equals("'s") && (pos[i - 1].startsWith("NN") || pos[i - 1].startsWith("NP"))) {
+                pos[i] = "POS";
+                lemmas[i] = word;
+            }
+        }
+    }
+
+    /** Tags an unknown word by its form */
+    private static void guess(String word, int i, String[] pos, String[] lemmas) {
+        String lower = word.toLowerCase();
+        int length = lower.length();
+        lemmas[i] = lower;
+        if (Character.isDigit(lower.charAt(0)))
+            pos[i] = "CD";
+        else if (Character.isUpperCase(word.charAt(0)))
+            pos[i] = "NP";
+        else if (length > 4 && lower.endsWith("ing")) {
+            pos[i] = "VVG";
+            lemmas[i] = lower.substring(0, length - 3);
+        }
+        else if (length > 3 && lower.endsWith("ed")) {
+            pos[i] = "VVD";
+            lemmas[i] = lower.substring(0, length - 2);
+        }
+        else if (length > 3 && lower.endsWith("ly"))
+            pos[i] = "RB";
+        else if (length > 3 && lower.endsWith("s") && !lower.endsWith("ss") && !lower.endsWith("us")
+                && !lower.endsWith("is")) {
+            pos[i] = "NNS";
+            if (lower.endsWith("ies"))
+                lemmas[i] = lower.substring(0, length - 3) + "y";
+            else if (lower.endsWith("ches") || lower.endsWith("shes") || lower.endsWith("xes")
+                    || lower.endsWith("sses"))
+                lemmas[i] = lower.substring(0, length - 2);
+            else
+                lemmas[i] = lower.substring(0, length - 1);
+        }
+        else
+            pos[i] = "NN";
+    }
+}
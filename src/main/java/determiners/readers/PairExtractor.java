@@ -0,0 +1,68 @@
+package determiners.readers;
+
+/**
+ * The determiner-noun pair extraction of {@link TaggedCorpusReader}, over a stream of (non-repeated) tokens: a
+ * {@code NN} preceded by a determiner forms a pair, unless it repeats the previous pair. Tokens other than
+ * commas, {@code SENT} and {@code DT} in between break the repetition.
+ *
+ * @author Christos Christodoulopoulos
+ */
+class PairExtractor {
+    static final byte POS_OTHER = 0, POS_COMMA = 1, POS_SENT = 2, POS_NN = 3, POS_DT = 4;
+    static final byte NO_DET = -1;
+
+    private boolean first = true;
+    private byte prevDet = NO_DET;
+    private int prevPairDet = -1, prevPairNoun = -1;
+
+    /**
+     * Advances to the next token.
+     *
+     * @param pos The kind of POS tag of the token (one of the {@code POS_} constants)
+     * @param det The determiner id of the token's lemma, or {@link #NO_DET}
+     * @return The determiner of the pair if the token is a noun that forms a pair, {@link #NO_DET} otherwise
+     */
+    byte next(byte pos, byte det) {
+        byte prev = prevDet;
+        prevDet = det;
+        // The first token has no previous token
+        if (first) {
+            first = false;
+            return NO_DET;
+        }
+        if (pos == POS_COMMA || pos == POS_SENT) return NO_DET;
+        if (pos == POS_NN && prev != NO_DET) return prev;
+        if (pos != POS_DT) prevPairDet = prevPairNoun = -1;
+        return NO_DET;
+    }
+
+    /**
+     * Emits the pair returned by {@link #next(byte, byte)}, unless it repeats the previous pair.
+     */
+    void pair(byte det, int noun, TaggedCorpusReader.PairHandler handler) {
+        if (det == prevPairDet && noun == prevPairNoun) return;
+        handler.pair(det, noun);
+        prevPairDet = det;
+        prevPairNoun = noun;
+    }
+
+    static byte posKind(String pos) {
+        char[] chars = pos.toCharArray();
+        return posKind(chars, 0, chars.length);
+    }
+
+    static byte posKind(char[] chars, int start, int end) {
+        if (equals(chars, start, end, ",")) return POS_COMMA;
+        if (equals(chars, start, end, "SENT")) return POS_SENT;
+        if (equals(chars, start, end, "NN")) return POS_NN;
+        if (equals(chars, start, end, "DT")) return POS_DT;
+        return POS_OTHER;
+    }
+
+    static boolean equals(char[] chars, int start, int end, String string) {
+        if (end - start != string.length()) return false;
+        for (int i = start; i < end; i++)
+            if (chars[i] != string.charAt(i - start)) return false;
+        return true;
+    }
+}
@@ -0,0 +1,271 @@
+package determiners.readers;
+
+import determiners.Metrics;
+import edu.illinois.cs.cogcomp.core.io.IOUtils;
+import edu.illinois.cs.cogcomp.core.io.LineIO;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A streaming (StAX) version of {@link XMLCorpusCleaner}: it produces exactly the same utterances, but reads the
+ * XML file as a stream instead of building a DOM, so it holds constant memory per file. All the state is kept per
+ * instance, so different files can be cleaned concurrently (see {@link #cleanFolder(String, String, int)}).
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class StaxCorpusCleaner implements Closeable {
+    private static final String dataFolder = "data";
+    private static final String child = "Nina";
+
+    /** The folder containing the individual data for each child */
+    private static final String subFolder = dataFolder + "/xml-files/Suppes/Nina/";
+
+    /** Which speaker to collect data for. Can be CHI (children) or MOT (mothers) */
+    private static final String WHO = "CHI";
+
+    /** The number of files cleaned at the same time */
+    private static final int numThreads = Runtime.getRuntime().availableProcessors();
+
+    private static final Metrics.Stage cleanStage = Metrics.stage("clean");
+    private static final Metrics.Counter filesCounter = Metrics.counter("clean.files");
+    private static final Metrics.Counter utterancesCounter = Metrics.counter("clean.utterances");
+
+    private final InputStream in;
+    private final XMLStreamReader reader;
+    private final String who;
+
+    public static void main(String[] args) throws IOException {
+        List<String> uttLines = cleanFolder(subFolder, WHO, numThreads);
+        String mot = (WHO.equals("MOT")) ? "-mot" : "";
+        LineIO.write(dataFolder + File.separator + child + mot + ".utterances.txt", uttLines);
+        Metrics.write("cleaner-metrics");
+    }
+
+    /**
+     * Cleans all the files of a folder in parallel.
+     *
+     * @param folder The folder containing the XML files of a single child
+     * @param who Which speaker to collect data for
+     * @param numThreads The number of files cleaned at the same time
+     * @return The utterances of all the files, in the same order as {@link XMLCorpusCleaner#main(String[])}
+     */
+    public static List<String> cleanFolder(String folder, final String who, int numThreads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        try {
+            for (String file : IOUtils.ls(folder)) {
+                final String filename = new File(folder, file).getPath();
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws IOException, XMLStreamException {
+                        List<String> uttLines = new ArrayList<>();
+                        int numUtterances = 0;
+                        Metrics.Span span = cleanStage.span();
+                        try (StaxCorpusCleaner cleaner = new StaxCorpusCleaner(filename, who)) {
+                            String utt;
+                            while ((utt = cleaner.nextUtterance()) != null) {
+                                numUtterances++;
+                                if (utt.trim().equals(".")) continue;
+                                uttLines.add(utt);
+                            }
+                        }
+                        finally {
+                            span.stop();
+                        }
+                        filesCounter.increment();
+                        utterancesCounter.add(numUtterances);
+                        return uttLines;
+                    }
+                }));
+            }
+            List<String> uttLines = new ArrayList<>();
+            for (Future<List<String>> future : futures)
+                uttLines.addAll(future.get());
+            return uttLines;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param filename The XML file of a single transcript
+     * @param who Which speaker to collect data for
+     */
+    public StaxCorpusCleaner(String filename, String who) throws IOException {
+        this.who = who;
+        this.in = new BufferedInputStream(new FileInputStream(filename));
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try {
+            this.reader = factory.createXMLStreamReader(in);
+        }
+        catch (XMLStreamException e) {
+            in.close();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return The next (cleaned) utterance of the speaker, or {@code null} at the end of the file
+     */
+    public String nextUtterance() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("u"))
+                continue;
+            if (!who.equals(reader.getAttributeValue(null, "who"))) {
+                skipElement();
+                continue;
+            }
+            String utteranceText = cleanUtterance();
+            if (utteranceText != null) return utteranceText;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the current {@code <u>} element up to its end tag.
+     *
+     * @return The cleaned text of the utterance, or {@code null} if the utterance is to be skipped
+     */
+    private String cleanUtterance() throws XMLStreamException {
+        StringBuilder utteranceText = new StringBuilder();
+        boolean skip = false;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT)
+                return skip ? null : utteranceText.toString().trim();
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+            if (skip) {
+                skipElement();
+                continue;
+            }
+            // Ignore everything other than <w>, <pause>, <t>, <g>
+            switch (reader.getLocalName()) {
+                case "pause":
+                    utteranceText.append(", ");
+                    skipElement();
+                    break;
+                case "t":
+                    utteranceText.append(getPunct(reader.getAttributeValue(null, "type"))).append(' ');
+                    skipElement();
+                    break;
+                case "g":
+                    skip = true;
+                    skipElement();
+                    break;
+                case "w":
+                    String word = getWord();
+                    if (word == null) skip = true;
+                    else utteranceText.append(word).append(' ');
+                    break;
+                default:
+                    skipElement();
+            }
+        }
+    }
+
+    /**
+     * Reads the current {@code <w>} element up to its end tag.
+     *
+     * @return The word, or {@code null} if it is not clean (see {@link XMLCorpusCleaner})
+     */
+    private String getWord() throws XMLStreamException {
+        if ("retracing".equals(reader.getAttributeValue(null, "type"))
+                || reader.getAttributeValue(null, "untranscribed") != null) {
+            skipElement();
+            return null;
+        }
+        boolean clean = true;
+        String wordString = "";
+        // Only the text before any child element makes up the word
+        int event = reader.next();
+        if (event == XMLStreamConstants.CHARACTERS) {
+            wordString = reader.getText();
+            event = reader.next();
+        }
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String type = reader.getAttributeValue(null, "type");
+                switch (reader.getLocalName()) {
+                    case "replacement":
+                    case "shortening":
+                        clean = false;
+                        break;
+                    case "wk":
+                        if ("cmp".equals(type)) clean = false;
+                        break;
+                    case "p":
+                        if ("drawl".equals(type)) clean = false;
+                        break;
+                }
+                skipElement();
+            }
+            event = reader.next();
+        }
+        if (!clean) return null;
+        return wordString.replaceAll("z*_", " ").trim();
+    }
+
+    private static String getPunct(String type) {
+        if (type == null) return "";
+        switch (type) {
+            case "p":
+                return ".";
+            case "q":
+                return "?";
+            case "e":
+                return "!";
+            default:
+                return "";
+        }
+    }
+
+    /** Skips to the end tag of the current element */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
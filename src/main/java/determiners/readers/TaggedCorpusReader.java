@@ -0,0 +1,330 @@
+package determiners.readers;
+
+import determiners.Metrics;
+import determiners.Vocabulary;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static determiners.readers.PairExtractor.NO_DET;
+import static determiners.readers.PairExtractor.POS_SENT;
+
+/**
+ * A single-pass reader for the tagged corpus files (one {@code word POS lemma} token per line, sentences
+ * ending with a {@code SENT} token). In the same pass it:
+ * <ul>
+ *     <li>removes sentences that repeat the immediately preceding one (compared using a rolling hash of
+ *     their words, confirmed against the previous sentence)</li>
+ *     <li>extracts the determiner-noun pairs: a {@code NN} preceded by one of the determiners (by default "a" or
+ *     "the", compared against the lemma), skipping immediate repetitions of the same pair</li>
+ * </ul>
+ * Nouns are interned into a {@link Vocabulary} straight from the character buffer, and pairs are passed on as
+ * determiner and noun ids.
+ * Lines are tokenized in place over a reusable character buffer (no regular expressions or per-line arrays),
+ * and only the current and the previous sentence are kept in memory.
+ * Tokens can also come from another source (e.g. a {@link Tagger}, see {@link CorpusPipeline}) through
+ * {@link #start(PairHandler, Vocabulary, SentenceHandler)}, {@link #token(String, String, String)} and
+ * {@link #finish()}, with exactly the same processing.
+ * The time of the whole pass is recorded as the {@code read} {@link Metrics} stage, with the repetition check
+ * ({@code dedup}) and the pair extraction ({@code count}) also timed separately.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public class TaggedCorpusReader {
+    /** Receives the determiner-noun pairs of the corpus in order */
+    public interface PairHandler {
+        /**
+         * @param det The index of the determiner in the reader's determiners (by default {@link #DETERMINERS})
+         * @param noun The id of the noun in the reader's vocabulary
+         */
+        void pair(int det, int noun);
+    }
+
+    /** Receives every sentence of the corpus, as ids of the columns' vocabulary */
+    public interface SentenceHandler {
+        /**
+         * The arrays are reused between calls; only the first {@code length} entries are valid.
+         *
+         * @param repeated Whether the sentence repeats the previous one (and was ignored for the pairs)
+         */
+        void sentence(int[] words, int[] pos, int[] lemmas, int length, boolean repeated);
+    }
+
+    /** The default determiners that are extracted; their indices are the determiner ids */
+    public static final String[] DETERMINERS = {"a", "the"};
+
+    private static final int bufferSize = 1 << 16;
+    private static final long hashPrime = 1099511628211L;
+
+    private static final Metrics.Stage readStage = Metrics.stage("read");
+    private static final Metrics.Stage dedupStage = Metrics.stage("dedup");
+    private static final Metrics.Stage countStage = Metrics.stage("count");
+    private static final Metrics.Counter linesCounter = Metrics.counter("read.lines");
+    private static final Metrics.Counter sentencesCounter = Metrics.counter("read.sentences");
+    private static final Metrics.Counter repeatedCounter = Metrics.counter("dedup.repeated");
+    private static final Metrics.Counter pairsCounter = Metrics.counter("count.pairs");
+
+    private final String file;
+    private final Vocabulary nouns;
+    private final String[] determiners;
+    private final int[] columnBounds = new int[6];
+    private char[] tokenChars = new char[256];
+
+    // The words of the current and the previous sentence
+    private Sentence sentence = new Sentence(), prevSentence = new Sentence();
+    private PairExtractor extractor;
+    private Vocabulary columns;
+    private PairHandler handler;
+    private SentenceHandler sentences;
+    private long numLines, numSentences, numRepeated, numPairs;
+
+    /**
+     * @param file The tagged corpus file
+     * @param nouns The vocabulary into which the nouns are interned
+     */
+    public TaggedCorpusReader(String file, Vocabulary nouns) {
+        this(file, nouns, DETERMINERS);
+    }
+
+    /**
+     * @param file The tagged corpus file
+     * @param nouns The vocabulary into which the nouns are interned
+     * @param determiners The (lemmas of the) determiners that are extracted, at most 32
+     */
+    public TaggedCorpusReader(String file, Vocabulary nouns, String[] determiners) {
+        if (determiners.length > 32)
+            throw new IllegalArgumentException("At most 32 determiners are supported, got " + determiners.length);
+        this.file = file;
+        this.nouns = nouns;
+        this.determiners = determiners;
+    }
+
+    /**
+     * A reader of tokens from another source than a file (see {@link #token(String, String, String)}).
+     *
+     * @param nouns The vocabulary into which the nouns are interned
+     * @param determiners The (lemmas of the) determiners that are extracted, at most 32
+     */
+    public TaggedCorpusReader(Vocabulary nouns, String[] determiners) {
+        this(null, nouns, determiners);
+    }
+
+    /**
+     * Reads the whole file, passing every determiner-noun pair to {@code handler}.
+     */
+    public void read(PairHandler handler) throws IOException {
+        read(handler, null, null);
+    }
+
+    /**
+     * Reads the whole file, passing every determiner-noun pair to {@code handler} and every sentence (including
+     * the repeated ones) to {@code sentences}.
+     *
+     * @param columns The vocabulary into which the words, POS tags and lemmas are interned
+     */
+    public void read(PairHandler handler, Vocabulary columns, SentenceHandler sentences) throws IOException {
+        if (file == null) throw new IllegalStateException("The reader has no file");
+        start(handler, columns, sentences);
+
+        char[] buffer = new char[bufferSize];
+        char[] line = new char[256];
+        int lineLength = 0;
+        Metrics.Span span = readStage.span();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c == '\n') {
+                        processLine(line, lineLength);
+                        lineLength = 0;
+                        continue;
+                    }
+                    if (lineLength == line.length) {
+                        char[] grown = new char[line.length * 2];
+                        System.arraycopy(line, 0, grown, 0, lineLength);
+                        line = grown;
+                    }
+                    line[lineLength++] = c;
+                }
+            }
+            if (lineLength > 0) processLine(line, lineLength);
+        }
+        finally {
+            span.stop();
+        }
+        finish();
+    }
+
+    /**
+     * Starts a new stream of tokens, passing every determiner-noun pair to {@code handler} and every sentence
+     * (including the repeated ones) to {@code sentences}.
+     *
+     * @param columns The vocabulary into which the words, POS tags and lemmas are interned, or {@code null}
+     * @param sentences The receiver of the sentences, or {@code null}
+     */
+    public void start(PairHandler handler, Vocabulary columns, SentenceHandler sentences) {
+        this.handler = handler;
+        this.columns = columns;
+        this.sentences = sentences;
+        sentence.clear();
+        prevSentence.clear();
+        extractor = new PairExtractor();
+        numLines = numSentences = numRepeated = numPairs = 0;
+    }
+
+    /**
+     * Processes the next token of the stream; a sentence ends with a {@code SENT} token.
+     */
+    public void token(String word, String pos, String lemma) {
+        int length = word.length() + pos.length() + lemma.length();
+        if (length > tokenChars.length) tokenChars = new char[Math.max(2 * tokenChars.length, length)];
+        int[] bounds = columnBounds;
+        bounds[0] = 0;
+        bounds[1] = bounds[2] = word.length();
+        bounds[3] = bounds[4] = bounds[2] + pos.length();
+        bounds[5] = bounds[4] + lemma.length();
+        word.getChars(0, word.length(), tokenChars, bounds[0]);
+        pos.getChars(0, pos.length(), tokenChars, bounds[2]);
+        lemma.getChars(0, lemma.length(), tokenChars, bounds[4]);
+        processToken(tokenChars, bounds);
+    }
+
+    /**
+     * Ends the stream of tokens. Any tokens after the last {@code SENT} are not part of a sentence and are
+     * dropped.
+     */
+    public void finish() {
+        linesCounter.add(numLines);
+        sentencesCounter.add(numSentences);
+        repeatedCounter.add(numRepeated);
+        pairsCounter.add(numPairs);
+    }
+
+    private void processLine(char[] line, int length) {
+        numLines++;
+        // Split the line into its first three whitespace-separated columns
+        int[] bounds = columnBounds;
+        int numColumns = 0, i = 0;
+        while (numColumns < 3) {
+            while (i < length && Character.isWhitespace(line[i])) i++;
+            if (i == length) break;
+            bounds[2 * numColumns] = i;
+            while (i < length && !Character.isWhitespace(line[i])) i++;
+            bounds[2 * numColumns + 1] = i;
+            numColumns++;
+        }
+        if (numColumns < 3) return;
+        processToken(line, bounds);
+    }
+
+    /**
+     * @param bounds The start and end of the word, POS tag and lemma in {@code line}
+     */
+    private void processToken(char[] line, int[] bounds) {
+        byte pos = PairExtractor.posKind(line, bounds[2], bounds[3]);
+        byte det = NO_DET;
+        for (byte d = 0; d < determiners.length; d++) {
+            if (PairExtractor.equals(line, bounds[4], bounds[5], determiners[d])) {
+                det = d;
+                break;
+            }
+        }
+        sentence.add(line, bounds[0], bounds[1] - bounds[0], pos, det);
+        if (columns != null) {
+            sentence.addColumnIds(columns.id(line, bounds[0], bounds[1] - bounds[0]),
+                    columns.id(line, bounds[2], bounds[3] - bounds[2]),
+                    columns.id(line, bounds[4], bounds[5] - bounds[4]));
+        }
+
+        if (pos == POS_SENT) {
+            numSentences++;
+            long start = dedupStage.start();
+            boolean repeated = sentence.sameWords(prevSentence);
+            dedupStage.stop(start);
+            if (!repeated) {
+                start = countStage.start();
+                for (int t = 0; t < sentence.size; t++) {
+                    byte pairDet = extractor.next(sentence.pos[t], sentence.det[t]);
+                    if (pairDet != NO_DET) {
+                        extractor.pair(pairDet, nouns.id(sentence.chars, sentence.wordStart[t],
+                                sentence.wordLength[t]), handler);
+                        numPairs++;
+                    }
+                }
+                countStage.stop(start);
+            }
+            else numRepeated++;
+            if (sentences != null)
+                sentences.sentence(sentence.wordIds, sentence.posIds, sentence.lemmaIds, sentence.size, repeated);
+            Sentence tmp = prevSentence;
+            prevSentence = sentence;
+            sentence = tmp;
+            sentence.clear();
+        }
+    }
+
+    /** The tokens of a single sentence; the words are stored consecutively in a reusable character buffer */
+    private static class Sentence {
+        char[] chars = new char[1024];
+        int charLength;
+        int[] wordStart = new int[64], wordLength = new int[64];
+        byte[] pos = new byte[64];
+        byte[] det = new byte[64];
+        int[] wordIds = new int[64], posIds = new int[64], lemmaIds = new int[64];
+        int size;
+        long hash;
+
+        void add(char[] line, int start, int length, byte tokenPos, byte tokenDet) {
+            if (size == pos.length) {
+                int capacity = 2 * size;
+                wordStart = Arrays.copyOf(wordStart, capacity);
+                wordLength = Arrays.copyOf(wordLength, capacity);
+                pos = Arrays.copyOf(pos, capacity);
+                det = Arrays.copyOf(det, capacity);
+                wordIds = Arrays.copyOf(wordIds, capacity);
+                posIds = Arrays.copyOf(posIds, capacity);
+                lemmaIds = Arrays.copyOf(lemmaIds, capacity);
+            }
+            if (charLength + length > chars.length)
+                chars = Arrays.copyOf(chars, Math.max(2 * chars.length, charLength + length));
+            System.arraycopy(line, start, chars, charLength, length);
+            // Roll the hash over the word and a separator
+            for (int i = start; i < start + length; i++)
+                hash = (hash ^ line[i]) * hashPrime;
+            hash = (hash ^ ' ') * hashPrime;
+            wordStart[size] = charLength;
+            wordLength[size] = length;
+            pos[size] = tokenPos;
+            det[size] = tokenDet;
+            charLength += length;
+            size++;
+        }
+
+        /** Sets the vocabulary ids of the columns of the last token */
+        void addColumnIds(int word, int tokenPos, int lemma) {
+            wordIds[size - 1] = word;
+            posIds[size - 1] = tokenPos;
+            lemmaIds[size - 1] = lemma;
+        }
+
+        boolean sameWords(Sentence other) {
+            if (hash != other.hash || size != other.size || charLength != other.charLength) return false;
+            for (int i = 0; i < size; i++)
+                if (wordLength[i] != other.wordLength[i]) return false;
+            for (int i = 0; i < charLength; i++)
+                if (chars[i] != other.chars[i]) return false;
+            return true;
+        }
+
+        void clear() {
+            size = 0;
+            charLength = 0;
+            hash = 0xcbf29ce484222325L;
+        }
+    }
+}
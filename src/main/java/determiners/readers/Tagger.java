@@ -0,0 +1,20 @@
+package determiners.readers;
+
+/**
+ * A part-of-speech tagger and lemmatiser for the tokens of a sentence, producing the tagset and lemmas of the
+ * tagged corpus files (e.g. {@code NN}, {@code NNS}, {@code DT}, with "an" lemmatised to "a"). Sentence-final
+ * punctuation is tagged {@code SENT}.
+ *
+ * @author Christos Christodoulopoulos
+ */
+public interface Tagger {
+    /**
+     * Tags the tokens of a sentence. Implementations do not need to be thread-safe.
+     *
+     * @param words The tokens of the sentence
+     * @param length The number of tokens (only the first {@code length} entries of the arrays are used)
+     * @param pos Receives the POS tag of every token
+     * @param lemmas Receives the lemma of every token
+     */
+    void tag(String[] words, int length, String[] pos, String[] lemmas);
+}
@@ -1,5 +1,6 @@
 package determiners.readers;
 
+import determiners.Metrics;
 import edu.illinois.cs.cogcomp.core.io.IOUtils;
 import edu.illinois.cs.cogcomp.core.io.LineIO;
 import org.w3c.dom.Document;
@@ -44,21 +45,34 @@ public class XMLCorpusCleaner {
     /** Which speaker to collect data for. Can be CHI (children) or MOT (mothers) */
     private static final String WHO = "CHI";
 
-    private static NodeList utterances;
-    private static int counter;
+    private static final Metrics.Stage cleanStage = Metrics.stage("clean");
+    private static final Metrics.Counter filesCounter = Metrics.counter("clean.files");
+    private static final Metrics.Counter utterancesCounter = Metrics.counter("clean.utterances");
+
+    private NodeList utterances;
+    private int counter;
 
     public static void main (String[] args) throws IOException {
         List<String> uttLines = new ArrayList<>();
         for (String file : IOUtils.ls(subFolder)) {
-            XMLCorpusCleaner reader = new XMLCorpusCleaner(subFolder + file);
-            String utt;
-            while ((utt = reader.nextUtterance()) != null) {
-                if (utt.trim().equals(".")) continue;
-                uttLines.add(utt);
+            Metrics.Span span = cleanStage.span();
+            try {
+                XMLCorpusCleaner reader = new XMLCorpusCleaner(subFolder + file);
+                String utt;
+                while ((utt = reader.nextUtterance()) != null) {
+                    utterancesCounter.increment();
+                    if (utt.trim().equals(".")) continue;
+                    uttLines.add(utt);
+                }
+            }
+            finally {
+                span.stop();
             }
+            filesCounter.increment();
         }
         String mot = (WHO.equals("MOT")) ? "-mot" : "";
         LineIO.write(dataFolder + File.separator + child + mot + ".utterances.txt", uttLines);
+        Metrics.write("cleaner-metrics");
     }
 
     public XMLCorpusCleaner(String filename) {
@@ -77,13 +91,19 @@ public class XMLCorpusCleaner {
     }
 
     public String nextUtterance() {
-        if (counter >= utterances.getLength()) return null;
-        Node utterance = utterances.item(counter);
-        String who = utterance.getAttributes().getNamedItem("who").getNodeValue();
-        if (!who.equals(WHO)) {
-            counter++;
-            return nextUtterance();
+        while (counter < utterances.getLength()) {
+            String utteranceText = cleanUtterance(utterances.item(counter++));
+            if (utteranceText != null) return utteranceText;
         }
+        return null;
+    }
+
+    /**
+     * @return The cleaned text of the utterance, or {@code null} if the utterance is to be skipped
+     */
+    private String cleanUtterance(Node utterance) {
+        String who = utterance.getAttributes().getNamedItem("who").getNodeValue();
+        if (!who.equals(WHO)) return null;
         String utteranceText = "";
         // Ignore everything other than <w>, <pause>, <t>, <g>
         for (Node node : getFilteredChildren(utterance, "w", "pause", "t", "g")) {
@@ -97,22 +117,16 @@ public class XMLCorpusCleaner {
                     nodeText = getPunct(node);
                     break;
                 case "g":
-                    counter++;
-                    return nextUtterance();
+                    return null;
                 case "w":
                     if (isClean(node))
                         nodeText = getWord(node);
-                    else {
-                        counter++;
-                        return nextUtterance();
-                    }
+                    else return null;
                     break;
             }
             utteranceText += nodeText + " ";
         }
-        utteranceText = utteranceText.trim();
-        counter++;
-        return utteranceText;
+        return utteranceText.trim();
     }
 
     public List<Node> getFilteredChildren(Node node, String... filters) {